@@ -0,0 +1,101 @@
+package com.leoiacovini.lox;
+
+/// Lox programs for the benchmarks. The sized ones repeat a unit of functions, a class and the globals using them, with
+/// fresh names each time, so every phase has the same kind of work to do whatever the size.
+final class LoxSources {
+
+    private LoxSources() {
+    }
+
+    static String ofSize(String size) {
+        return switch (size) {
+            case "small" -> generate(1_000);
+            case "medium" -> generate(64_000);
+            case "large" -> generate(4_000_000);
+            default -> throw new IllegalArgumentException("Unknown size " + size);
+        };
+    }
+
+    /// About `bytes` characters of Lox source
+    static String generate(int bytes) {
+        final StringBuilder source = new StringBuilder(bytes + 512);
+        for (int n = 0; source.length() < bytes; n++) {
+            source.append("""
+                    // unit %1$d
+                    fun add%1$d(a, b) {
+                      var sum = a + b;
+                      if (sum > 10 and a != b) {
+                        return sum - 1;
+                      }
+                      return sum * 2;
+                    }
+
+                    class Point%1$d {
+                      init(x, y) {
+                        this.x = x;
+                        this.y = y;
+                      }
+                      norm() { return this.x * this.x + this.y * this.y; }
+                    }
+
+                    var value%1$d = add%1$d(%1$d, 3) + Point%1$d(1, %1$d).norm();
+                    var label%1$d = "unit " + "%1$d";
+                    var i%1$d = 0;
+                    while (i%1$d < 3) i%1$d = i%1$d + 1;
+
+                    """.formatted(n));
+        }
+        return source.toString();
+    }
+
+    static String workload(String name) {
+        return switch (name) {
+            case "fib" -> """
+                    fun fib(n) {
+                      if (n < 2) return n;
+                      return fib(n - 2) + fib(n - 1);
+                    }
+                    print fib(20);
+                    """;
+            case "loop" -> """
+                    var sum = 0;
+                    for (var i = 0; i < 100000; i = i + 1) {
+                      if (i / 2 > 100) sum = sum + i; else sum = sum - 1;
+                    }
+                    print sum;
+                    """;
+            case "methods" -> """
+                    class Counter {
+                      init() { this.count = 0; }
+                      add(n) { this.count = this.count + n; return this; }
+                    }
+                    var counter = Counter();
+                    for (var i = 0; i < 50000; i = i + 1) counter.add(1).add(2);
+                    print counter.count;
+                    """;
+            case "instances" -> """
+                    class Node {
+                      init(left, right) {
+                        this.left = left;
+                        this.right = right;
+                      }
+                    }
+                    fun tree(depth) {
+                      if (depth == 0) return Node(nil, nil);
+                      return Node(tree(depth - 1), tree(depth - 1));
+                    }
+                    fun count(node) {
+                      if (node.left == nil) return 1;
+                      return 1 + count(node.left) + count(node.right);
+                    }
+                    print count(tree(14));
+                    """;
+            case "strings" -> """
+                    var s = "";
+                    for (var i = 0; i < 2000; i = i + 1) s = s + "the quick brown fox" + "\\n";
+                    print s == s + "";
+                    """;
+            default -> throw new IllegalArgumentException("Unknown workload " + name);
+        };
+    }
+}
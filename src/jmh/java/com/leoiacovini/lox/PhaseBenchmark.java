@@ -0,0 +1,81 @@
+package com.leoiacovini.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/// Each phase of Main.run on its own, over generated sources of a few sizes. The input of every phase is prepared once,
+/// so a score is the time of that phase only.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private String source;
+    private List<Token> tokens;
+    private List<Stmt> statements;
+    private List<Stmt> optimized;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = LoxSources.ofSize(size);
+        tokens = new Scanner(source).scanTokens();
+        statements = new Parser(tokens).parse();
+        new Resolver().resolve(statements);
+        optimized = new Optimizer().optimize(statements);
+        new Resolver().resolve(optimized);
+        if (Reporter.hadError) throw new IllegalStateException("Generated source doesn't compile");
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public List<Token> scan() {
+        return new Scanner(source).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> resolve() {
+        new Resolver().resolve(statements);
+        return statements;
+    }
+
+    @Benchmark
+    public Interpreter interpret() {
+        final var interpreter = new Interpreter();
+        interpreter.interpret(optimized);
+        return interpreter;
+    }
+}
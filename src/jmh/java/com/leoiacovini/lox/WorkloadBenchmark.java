@@ -0,0 +1,71 @@
+package com.leoiacovini.lox;
+
+import com.leoiacovini.lox.vm.VM;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/// A whole run of common workloads, from source to output, on each engine. Run with `-prof gc` to see the allocation
+/// rate next to the throughput.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkloadBenchmark {
+
+    @Param({"fib", "loop", "methods", "instances", "strings"})
+    public String workload;
+
+    @Param({"tree", "closure", "vm", "jvm"})
+    public String engine;
+
+    private String source;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = LoxSources.workload(workload);
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+        if (Reporter.hadError || Reporter.hadRuntimeError) throw new IllegalStateException(workload + " failed");
+    }
+
+    /// The same steps as Main.run, with a fresh engine so no global is left over from the previous run
+    @Benchmark
+    public Engine run() {
+        final var statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver().resolve(statements);
+        final var optimized = new Optimizer().optimize(statements);
+        new Resolver().resolve(optimized);
+        final Engine engine = switch (this.engine) {
+            case "tree" -> new Interpreter();
+            case "closure" -> new ClosureCompiler();
+            case "vm" -> new BytecodeCompiler(VM.DEFAULT_MAX_FRAMES);
+            case "jvm" -> new JvmCompiler();
+            default -> throw new IllegalArgumentException("Unknown engine " + this.engine);
+        };
+        engine.interpret(optimized);
+        return engine;
+    }
+}
@@ -1,11 +1,33 @@
 package com.leoiacovini.lox;
 
-public class AstPrinter implements Expr.Visitor<String> {
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
 
     public String print(Expr expr) {
         return expr.accept(this);
     }
 
+    public String print(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    /// One top level statement per line
+    public String print(List<Stmt> statements) {
+        return statements.stream().map(this::print).collect(Collectors.joining("\n"));
+    }
+
+    private String parenthesize(String name, List<Stmt> statements) {
+        final var stringBuilder = new StringBuilder();
+        stringBuilder.append("(").append(name);
+        for (final var stmt : statements) {
+            stringBuilder.append(" ").append(print(stmt));
+        }
+        stringBuilder.append(")");
+        return stringBuilder.toString();
+    }
+
     private String parenthesize(String name, Expr... exprs) {
         final var stringBuilder = new StringBuilder();
         stringBuilder.append("(").append(name);
@@ -33,8 +55,7 @@ public class AstPrinter implements Expr.Visitor<String> {
 
     @Override
     public String visitLiteralExpr(Expr.Literal expr) {
-        if (expr.value == null) return "nil";
-        return expr.value.toString();
+        return Interpreter.stringify(expr.value);
     }
 
     @Override
@@ -49,7 +70,7 @@ public class AstPrinter implements Expr.Visitor<String> {
 
     @Override
     public String visitVariableExpr(Expr.Variable expr) {
-        return expr.name.getLiteral().toString();
+        return expr.name.getLexeme();
     }
 
     @Override
@@ -81,4 +102,58 @@ public class AstPrinter implements Expr.Visitor<String> {
     public String visitSuperExpr(Expr.Super expr) {
         return expr.keyword.getLexeme();
     }
+
+    @Override
+    public String visitBlockStmt(Stmt.Block stmt) {
+        return parenthesize("block", stmt.statements);
+    }
+
+    @Override
+    public String visitClassStmt(Stmt.Class stmt) {
+        final String name = stmt.superClass == null
+                ? stmt.name.getLexeme()
+                : stmt.name.getLexeme() + " < " + stmt.superClass.name.getLexeme();
+        return parenthesize("class " + name, List.copyOf(stmt.methods));
+    }
+
+    @Override
+    public String visitExpressionStmt(Stmt.Expression stmt) {
+        return parenthesize(";", stmt.expression);
+    }
+
+    @Override
+    public String visitIfStmt(Stmt.If stmt) {
+        final String branches = stmt.elseBranch == null
+                ? print(stmt.thenBranch)
+                : print(stmt.thenBranch) + " " + print(stmt.elseBranch);
+        return "(if " + print(stmt.condition) + " " + branches + ")";
+    }
+
+    @Override
+    public String visitFunctionStmt(Stmt.Function stmt) {
+        final String params = stmt.params.stream().map(Token::getLexeme).collect(Collectors.joining(" "));
+        return parenthesize("fun " + stmt.name.getLexeme() + " (" + params + ")", stmt.body);
+    }
+
+    @Override
+    public String visitPrintStmt(Stmt.Print stmt) {
+        return parenthesize("print", stmt.expression);
+    }
+
+    @Override
+    public String visitWhileStmt(Stmt.While stmt) {
+        return "(while " + print(stmt.condition) + " " + print(stmt.body) + ")";
+    }
+
+    @Override
+    public String visitReturnStmt(Stmt.Return stmt) {
+        return stmt.value == null ? "(return)" : parenthesize("return", stmt.value);
+    }
+
+    @Override
+    public String visitVarStmt(Stmt.Var stmt) {
+        return stmt.initializer == null
+                ? "(var " + stmt.name.getLexeme() + ")"
+                : parenthesize("var " + stmt.name.getLexeme(), stmt.initializer);
+    }
 }
@@ -0,0 +1,125 @@
+package com.leoiacovini.lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/// `--bench dir`: runs every `.lox` script of a directory a few times to warm the JVM up, then measures more runs of it,
+/// each one through Main.run in a fresh engine. Reports the median and 95th percentile wall time and the median bytes
+/// allocated per script, as a table on stderr and as JSON on stdout. The scripts' own output is dropped.
+final class Bench {
+
+    static final int WARMUP = 3;
+    // Enough runs for the nearest-rank 95th percentile to be the 19th of 20, not simply the slowest run
+    static final int RUNS = 20;
+
+    /// Times are in nanoseconds, a failed script has none
+    record Result(String script, boolean failed, long median, long p95, long allocated) {
+    }
+
+    private Bench() {
+    }
+
+    /// Whether every script ran without an error
+    static boolean run(Path dir, String engineName, Supplier<Engine> engines) throws IOException {
+        final List<Path> scripts;
+        try (Stream<Path> files = Files.list(dir)) {
+            scripts = files.filter(file -> file.toString().endsWith(".lox")).sorted().toList();
+        }
+        final List<Result> results = new ArrayList<>(scripts.size());
+        final PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (final Path script : scripts) {
+                final String name = script.getFileName().toString().replaceFirst("\\.lox$", "");
+                System.err.println("Running " + name + "...");
+                results.add(measure(name, Files.readString(script, StandardCharsets.UTF_8), engines));
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+        writeTable(System.err, results);
+        writeJson(System.out, engineName, results);
+        return results.stream().noneMatch(Result::failed);
+    }
+
+    static Result measure(String name, String source, Supplier<Engine> engines) {
+        final long[] times = new long[RUNS];
+        final long[] allocations = new long[RUNS];
+        for (int run = -WARMUP; run < RUNS; run++) {
+            Reporter.hadError = false;
+            Reporter.hadRuntimeError = false;
+            final Engine engine = engines.get();
+            final long allocatedBefore = allocatedBytes();
+            final long start = System.nanoTime();
+            Main.run(new Scanner(source), engine);
+            final long elapsed = System.nanoTime() - start;
+            final long allocated = allocatedBytes() - allocatedBefore;
+            if (Reporter.hadError || Reporter.hadRuntimeError) return new Result(name, true, 0, 0, 0);
+            if (run < 0) continue;
+            times[run] = elapsed;
+            allocations[run] = allocated;
+        }
+        return new Result(name, false, percentile(times, 50), percentile(times, 95), percentile(allocations, 50));
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    /// Nearest-rank percentile: the smallest value that `percent`% of the values are less than or equal to
+    static long percentile(long[] values, int percent) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        final int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    static void writeTable(PrintStream out, List<Result> results) {
+        out.printf("%-24s %12s %12s %14s%n", "script", "median ms", "p95 ms", "allocated MB");
+        for (final Result result : results) {
+            if (result.failed()) {
+                out.printf("%-24s %12s%n", result.script(), "failed");
+                continue;
+            }
+            out.printf(Locale.ROOT, "%-24s %12.2f %12.2f %14.2f%n", result.script(),
+                    result.median() / 1e6, result.p95() / 1e6, result.allocated() / (1024.0 * 1024.0));
+        }
+    }
+
+    static void writeJson(PrintStream out, String engineName, List<Result> results) {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\"engine\": ").append(quote(engineName))
+                .append(", \"warmup\": ").append(WARMUP)
+                .append(", \"runs\": ").append(RUNS)
+                .append(", \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            final Result result = results.get(i);
+            if (i > 0) json.append(", ");
+            json.append("{\"script\": ").append(quote(result.script()));
+            if (result.failed()) {
+                json.append(", \"failed\": true}");
+                continue;
+            }
+            json.append(", \"medianNanos\": ").append(result.median())
+                    .append(", \"p95Nanos\": ").append(result.p95())
+                    .append(", \"allocatedBytes\": ").append(result.allocated())
+                    .append('}');
+        }
+        out.println(json.append("]}"));
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
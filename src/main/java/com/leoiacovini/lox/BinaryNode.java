@@ -0,0 +1,190 @@
+package com.leoiacovini.lox;
+
+/// Self-specializing arithmetic/comparison node for the ClosureCompiler. Each node starts UNINITIALIZED and rewrites
+/// its own state from the operand types it sees the first time it runs: DOUBLE or STRING sites only pay for one guard
+/// before doing the primitive operation. When a guard fails the node deoptimizes to GENERIC for good, which performs
+/// the full type checks of the tree-walker.
+abstract class BinaryNode implements ClosureCompiler.ExprNode {
+
+    enum State {
+        UNINITIALIZED,
+        DOUBLE,
+        STRING,
+        GENERIC,
+    }
+
+    private final ClosureCompiler.ExprNode left;
+    private final ClosureCompiler.ExprNode right;
+    protected final Token operator;
+    private State state = State.UNINITIALIZED;
+
+    BinaryNode(Token operator, ClosureCompiler.ExprNode left, ClosureCompiler.ExprNode right) {
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    static BinaryNode create(Token operator, ClosureCompiler.ExprNode left, ClosureCompiler.ExprNode right) {
+        return switch (operator.getType()) {
+            case PLUS -> new Add(operator, left, right);
+            case MINUS -> new Subtract(operator, left, right);
+            case STAR -> new Multiply(operator, left, right);
+            case SLASH -> new Divide(operator, left, right);
+            case GREATER -> new Greater(operator, left, right);
+            case GREATER_EQUAL -> new GreaterEqual(operator, left, right);
+            case LESS -> new Less(operator, left, right);
+            case LESS_EQUAL -> new LessEqual(operator, left, right);
+            default -> throw new IllegalArgumentException("No specializing node for " + operator.getType());
+        };
+    }
+
+    State getState() {
+        return state;
+    }
+
+    abstract Object executeDouble(double left, double right);
+
+    /// Only operators that accept strings override it, the others never specialize to STRING. Operands are a String
+    /// or a Rope.
+    Object executeString(Object left, Object right) {
+        throw new IllegalStateException(operator.getType() + " can't run on strings");
+    }
+
+    boolean acceptsStrings() {
+        return false;
+    }
+
+    Object executeGeneric(Object left, Object right) {
+        if (left instanceof Double a && right instanceof Double b) return executeDouble(a, b);
+        throw new Interpreter.RuntimeError(operator, "Operand must be a number");
+    }
+
+    @Override
+    public Object evaluate(Environment env) {
+        final Object l = left.evaluate(env);
+        final Object r = right.evaluate(env);
+        switch (state) {
+            case DOUBLE -> {
+                if (l instanceof Double a && r instanceof Double b) return executeDouble(a, b);
+                state = State.GENERIC;
+            }
+            case STRING -> {
+                if (Rope.isString(l) && Rope.isString(r)) return executeString(l, r);
+                state = State.GENERIC;
+            }
+            case UNINITIALIZED -> state = specialize(l, r);
+        }
+        return executeGeneric(l, r);
+    }
+
+    private State specialize(Object l, Object r) {
+        if (l instanceof Double && r instanceof Double) return State.DOUBLE;
+        if (acceptsStrings() && Rope.isString(l) && Rope.isString(r)) return State.STRING;
+        return State.GENERIC;
+    }
+
+    static final class Add extends BinaryNode {
+        Add(Token operator, ClosureCompiler.ExprNode left, ClosureCompiler.ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object executeDouble(double left, double right) {
+            return left + right;
+        }
+
+        @Override
+        Object executeString(Object left, Object right) {
+            return Rope.concat(left, right);
+        }
+
+        @Override
+        boolean acceptsStrings() {
+            return true;
+        }
+
+        @Override
+        Object executeGeneric(Object left, Object right) {
+            if (left instanceof Double a && right instanceof Double b) return executeDouble(a, b);
+            if (Rope.isString(left) && Rope.isString(right)) return executeString(left, right);
+            throw new Interpreter.RuntimeError(operator, "Operands must be two numbers or two strings.");
+        }
+    }
+
+    static final class Subtract extends BinaryNode {
+        Subtract(Token operator, ClosureCompiler.ExprNode left, ClosureCompiler.ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object executeDouble(double left, double right) {
+            return left - right;
+        }
+    }
+
+    static final class Multiply extends BinaryNode {
+        Multiply(Token operator, ClosureCompiler.ExprNode left, ClosureCompiler.ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object executeDouble(double left, double right) {
+            return left * right;
+        }
+    }
+
+    static final class Divide extends BinaryNode {
+        Divide(Token operator, ClosureCompiler.ExprNode left, ClosureCompiler.ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object executeDouble(double left, double right) {
+            return left / right;
+        }
+    }
+
+    static final class Greater extends BinaryNode {
+        Greater(Token operator, ClosureCompiler.ExprNode left, ClosureCompiler.ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object executeDouble(double left, double right) {
+            return left > right;
+        }
+    }
+
+    static final class GreaterEqual extends BinaryNode {
+        GreaterEqual(Token operator, ClosureCompiler.ExprNode left, ClosureCompiler.ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object executeDouble(double left, double right) {
+            return left >= right;
+        }
+    }
+
+    static final class Less extends BinaryNode {
+        Less(Token operator, ClosureCompiler.ExprNode left, ClosureCompiler.ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object executeDouble(double left, double right) {
+            return left < right;
+        }
+    }
+
+    static final class LessEqual extends BinaryNode {
+        LessEqual(Token operator, ClosureCompiler.ExprNode left, ClosureCompiler.ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object executeDouble(double left, double right) {
+            return left <= right;
+        }
+    }
+}
@@ -0,0 +1,563 @@
+package com.leoiacovini.lox;
+
+import com.leoiacovini.lox.vm.Chunk;
+import com.leoiacovini.lox.vm.FunctionProto;
+import com.leoiacovini.lox.vm.OpCode;
+import com.leoiacovini.lox.vm.VM;
+import com.leoiacovini.lox.vm.VmRuntimeError;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// Compiles the resolved AST into bytecode for the `vm` package. Globals are those the Resolver left unresolved,
+/// everything else lives in the stack slots of its function, and variables captured from enclosing functions are
+/// reached through upvalues. It lives next to the AST classes because those are package-private.
+public class BytecodeCompiler implements Engine, Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private static final int MAX_SLOTS = 256;
+    private static final int MAX_JUMP = 0xffff;
+
+    private enum FunctionType {
+        SCRIPT,
+        FUNCTION,
+        METHOD,
+        INITIALIZER,
+    }
+
+    private static class Local {
+        final String name;
+        final int depth;
+        boolean captured = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private record UpvalueRef(int index, boolean isLocal) {
+    }
+
+    private static class FunctionState {
+        final FunctionState enclosing;
+        final FunctionType type;
+        final Chunk chunk = new Chunk();
+        final List<Local> locals = new ArrayList<>();
+        final List<UpvalueRef> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+
+        FunctionState(FunctionState enclosing, FunctionType type) {
+            this.enclosing = enclosing;
+            this.type = type;
+            // Slot zero holds the callee itself, or the receiver for methods
+            final boolean hasReceiver = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+            locals.add(new Local(hasReceiver ? "this" : "", 0));
+        }
+    }
+
+    private final VM vm;
+    private FunctionState current;
+    private Token lastToken;
+
+    public BytecodeCompiler() {
+        this(VM.DEFAULT_MAX_FRAMES);
+    }
+
+    /// `maxDepth` bounds how many calls may be running at once, only the heap bounds how large it can be
+    public BytecodeCompiler(int maxDepth) {
+        this.vm = new VM(maxDepth);
+    }
+
+    @Override
+    public void interpret(List<Stmt> statements) {
+        final FunctionProto script = compile(statements);
+        if (Reporter.hadError) return;
+        try {
+            vm.interpret(script);
+        } catch (VmRuntimeError error) {
+            Reporter.runtimeError(error.getMessage(), error.getLine());
+        }
+    }
+
+    public FunctionProto compile(List<Stmt> statements) {
+        current = new FunctionState(null, FunctionType.SCRIPT);
+        for (final Stmt stmt : statements) {
+            compile(stmt);
+        }
+        emitReturn();
+        final FunctionProto script = new FunctionProto("script", 0, 0, current.chunk);
+        current = null;
+        return script;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    // Emission helpers
+
+    private int line() {
+        return lastToken != null ? lastToken.getLine() : 0;
+    }
+
+    private void at(Token token) {
+        lastToken = token;
+    }
+
+    private void emit(int value) {
+        current.chunk.write(value, line());
+    }
+
+    private void emit(int opCode, int operand) {
+        emit(opCode);
+        emit(operand);
+    }
+
+    private void emitShort(int opCode, int operand) {
+        emit(opCode);
+        emit((operand >> 8) & 0xff);
+        emit(operand & 0xff);
+    }
+
+    private int constant(Object value) {
+        final int index = current.chunk.addConstant(value);
+        if (index > 0xffff) {
+            Reporter.error(lastToken, "Too many constants in one chunk.");
+            return 0;
+        }
+        return index;
+    }
+
+    private int emitJump(int opCode) {
+        emit(opCode);
+        emit(0xff);
+        emit(0xff);
+        return current.chunk.count() - 2;
+    }
+
+    private void patchJump(int offset) {
+        final int jump = current.chunk.count() - offset - 2;
+        if (jump > MAX_JUMP) Reporter.error(lastToken, "Too much code to jump over.");
+        current.chunk.patch(offset, (jump >> 8) & 0xff);
+        current.chunk.patch(offset + 1, jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        final int offset = current.chunk.count() - loopStart + 3;
+        if (offset > MAX_JUMP) Reporter.error(lastToken, "Loop body too large.");
+        emitShort(OpCode.LOOP, offset);
+    }
+
+    private void emitReturn() {
+        if (current.type == FunctionType.INITIALIZER) {
+            emit(OpCode.GET_LOCAL, 0);
+        } else {
+            emit(OpCode.NIL);
+        }
+        emit(OpCode.RETURN);
+    }
+
+    // Scopes and variables
+
+    private boolean isGlobalScope() {
+        return current.type == FunctionType.SCRIPT && current.scopeDepth == 0;
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+        final List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            emit(locals.remove(locals.size() - 1).captured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+    }
+
+    /// The value for the new local must be the topmost operand when this is called, it becomes the local's slot
+    private void addLocal(Token name) {
+        if (current.locals.size() == MAX_SLOTS) {
+            Reporter.error(name, "Too many local variables in function.");
+            return;
+        }
+        current.locals.add(new Local(name.getLexeme(), current.scopeDepth));
+    }
+
+    private void addLocal(String name) {
+        current.locals.add(new Local(name, current.scopeDepth));
+    }
+
+    private static int resolveLocal(FunctionState state, String name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            if (state.locals.get(i).name.equals(name)) return i;
+        }
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            final UpvalueRef upvalue = state.upvalues.get(i);
+            if (upvalue.index() == index && upvalue.isLocal() == isLocal) return i;
+        }
+        if (state.upvalues.size() == MAX_SLOTS) {
+            Reporter.error(lastToken, "Too many closure variables in function.");
+            return 0;
+        }
+        state.upvalues.add(new UpvalueRef(index, isLocal));
+        return state.upvalues.size() - 1;
+    }
+
+    private int resolveUpvalue(FunctionState state, String name) {
+        if (state.enclosing == null) return -1;
+        final int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            state.enclosing.locals.get(local).captured = true;
+            return addUpvalue(state, local, true);
+        }
+        final int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue != -1) return addUpvalue(state, upvalue, false);
+        return -1;
+    }
+
+    private void getVariable(Token name, boolean local) {
+        at(name);
+        final String lexeme = name.getLexeme();
+        if (local) {
+            final int slot = resolveLocal(current, lexeme);
+            if (slot != -1) {
+                emit(OpCode.GET_LOCAL, slot);
+                return;
+            }
+            final int upvalue = resolveUpvalue(current, lexeme);
+            if (upvalue != -1) {
+                emit(OpCode.GET_UPVALUE, upvalue);
+                return;
+            }
+        }
+        emitShort(OpCode.GET_GLOBAL, constant(lexeme));
+    }
+
+    private void setVariable(Token name, boolean local) {
+        at(name);
+        final String lexeme = name.getLexeme();
+        if (local) {
+            final int slot = resolveLocal(current, lexeme);
+            if (slot != -1) {
+                emit(OpCode.SET_LOCAL, slot);
+                return;
+            }
+            final int upvalue = resolveUpvalue(current, lexeme);
+            if (upvalue != -1) {
+                emit(OpCode.SET_UPVALUE, upvalue);
+                return;
+            }
+        }
+        emitShort(OpCode.SET_GLOBAL, constant(lexeme));
+    }
+
+    /// Binds the value on top of the stack to a freshly declared variable
+    private void defineVariable(Token name, boolean global) {
+        if (global) {
+            at(name);
+            emitShort(OpCode.DEFINE_GLOBAL, constant(name.getLexeme()));
+        } else {
+            addLocal(name);
+        }
+    }
+
+    private void function(Stmt.Function stmt, FunctionType type) {
+        at(stmt.name);
+        current = new FunctionState(current, type);
+        beginScope();
+        for (final Token param : stmt.params) {
+            addLocal(param);
+        }
+        for (final Stmt bodyStmt : stmt.body) {
+            compile(bodyStmt);
+        }
+        emitReturn();
+        final FunctionState compiled = current;
+        current = compiled.enclosing;
+
+        final var proto = new FunctionProto(stmt.name.getLexeme(), stmt.params.size(), compiled.upvalues.size(), compiled.chunk);
+        at(stmt.name);
+        emitShort(OpCode.CLOSURE, constant(proto));
+        for (final UpvalueRef upvalue : compiled.upvalues) {
+            emit(upvalue.isLocal() ? 1 : 0);
+            emit(upvalue.index());
+        }
+    }
+
+    // Statements
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (final Stmt inner : stmt.statements) {
+            compile(inner);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        final boolean global = isGlobalScope();
+        at(stmt.name);
+        final int nameConstant = constant(stmt.name.getLexeme());
+        emitShort(OpCode.CLASS, nameConstant);
+        defineVariable(stmt.name, global);
+
+        if (stmt.superClass != null) {
+            visitVariableExpr(stmt.superClass);
+            // The superclass stays on the stack as the `super` local captured by the methods
+            beginScope();
+            addLocal("super");
+            getVariable(stmt.name, !global);
+            at(stmt.superClass.name);
+            emit(OpCode.INHERIT);
+        }
+
+        getVariable(stmt.name, !global);
+        for (final Stmt.Function method : stmt.methods) {
+            final boolean isInit = method.name.getLexeme().equals("init");
+            function(method, isInit ? FunctionType.INITIALIZER : FunctionType.METHOD);
+            emitShort(OpCode.METHOD, constant(method.name.getLexeme()));
+        }
+        emit(OpCode.POP);
+
+        if (stmt.superClass != null) endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        final int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.thenBranch);
+        final int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emit(OpCode.POP);
+        if (stmt.elseBranch != null) compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        final boolean global = isGlobalScope();
+        // Locals are declared before compiling the body so the function can call itself
+        if (!global) addLocal(stmt.name);
+        function(stmt, FunctionType.FUNCTION);
+        if (global) defineVariable(stmt.name, true);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        final int loopStart = current.chunk.count();
+        compile(stmt.condition);
+        final int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.body);
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        at(stmt.keyword);
+        if (stmt.value == null) {
+            emitReturn();
+        } else {
+            compile(stmt.value);
+            emit(OpCode.RETURN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        final boolean global = isGlobalScope();
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.NIL);
+        }
+        defineVariable(stmt.name, global);
+        return null;
+    }
+
+    // Expressions
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        setVariable(expr.name, expr.local);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        at(expr.name);
+        emitShort(OpCode.SET_PROPERTY, constant(expr.name.getLexeme()));
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        at(expr.operator);
+        switch (expr.operator.getType()) {
+            case PLUS -> emit(OpCode.ADD);
+            case MINUS -> emit(OpCode.SUBTRACT);
+            case STAR -> emit(OpCode.MULTIPLY);
+            case SLASH -> emit(OpCode.DIVIDE);
+            case GREATER -> emit(OpCode.GREATER);
+            case GREATER_EQUAL -> emit(OpCode.GREATER_EQUAL);
+            case LESS -> emit(OpCode.LESS);
+            case LESS_EQUAL -> emit(OpCode.LESS_EQUAL);
+            case EQUAL_EQUAL -> emit(OpCode.EQUAL);
+            case BANG_EQUAL -> emit(OpCode.NOT_EQUAL);
+            default -> {
+                emit(OpCode.POP);
+                emit(OpCode.POP);
+                emit(OpCode.NIL);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NIL);
+        } else if (expr.value instanceof Boolean value) {
+            emit(value ? OpCode.TRUE : OpCode.FALSE);
+        } else {
+            emitShort(OpCode.CONSTANT, constant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        at(expr.operator);
+        switch (expr.operator.getType()) {
+            case MINUS -> emit(OpCode.NEGATE);
+            case BANG -> emit(OpCode.NOT);
+            default -> {
+                emit(OpCode.POP);
+                emit(OpCode.NIL);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        compile(expr.condition);
+        at(expr.operator);
+        final int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(expr.left);
+        final int endJump = emitJump(OpCode.JUMP);
+        patchJump(elseJump);
+        emit(OpCode.POP);
+        compile(expr.right);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        getVariable(expr.name, expr.local);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        at(expr.operator);
+        if (expr.operator.getType() == Token.TokenType.AND) {
+            final int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            final int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            final int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compile(expr.callee);
+        for (final Expr arg : expr.args) {
+            compile(arg);
+        }
+        at(expr.paren);
+        emit(OpCode.CALL, expr.args.size());
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        at(expr.name);
+        emitShort(OpCode.GET_PROPERTY, constant(expr.name.getLexeme()));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        getVariable(expr.keyword, true);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        getVariable(new Token("this", null, expr.keyword.getLine(), Token.TokenType.THIS), true);
+        getVariable(expr.keyword, true);
+        at(expr.method);
+        emitShort(OpCode.GET_SUPER, constant(expr.method.getLexeme()));
+        return null;
+    }
+}
@@ -0,0 +1,412 @@
+package com.leoiacovini.lox;
+
+import com.leoiacovini.lox.globals.Clock;
+
+import java.util.Arrays;
+import java.util.List;
+
+/// Alternative engine to the tree-walking Interpreter. The resolved AST is translated once into a tree of small
+/// closures, each one specialized for its node kind (and operator, or variable location) with its children captured as
+/// fields, so running the program is a chain of direct `evaluate`/`execute` calls instead of visitor double dispatch.
+public class ClosureCompiler implements Engine, Expr.Visitor<ClosureCompiler.ExprNode>, Stmt.Visitor<ClosureCompiler.StmtNode> {
+
+    @FunctionalInterface
+    interface ExprNode {
+        Object evaluate(Environment env);
+    }
+
+    /// Returns NORMAL when execution should go on with the next statement, otherwise the value being returned
+    @FunctionalInterface
+    interface StmtNode {
+        Object execute(Environment env);
+    }
+
+    static final Object NORMAL = new Object();
+
+    static class CompiledFunction extends LoxFunction {
+        private final StmtNode body;
+
+        CompiledFunction(Stmt.Function declaration, StmtNode body, Environment closureEnv, boolean isInitializer,
+                         LoxInstance receiver) {
+            super(declaration, closureEnv, isInitializer, receiver);
+            this.body = body;
+        }
+
+        @Override
+        protected LoxFunction withReceiver(LoxInstance instance) {
+            return new CompiledFunction(declaration, body, closureEnv, isInitializer, instance);
+        }
+
+        @Override
+        protected Object execute(LoxInstance receiver, List<Object> args, Interpreter interpreter) {
+            final var env = new Environment(closureEnv, declaration.scopeSize);
+            defineEnvArguments(receiver, args, env);
+            final Object result = body.execute(env);
+            return result == NORMAL ? null : result;
+        }
+    }
+
+    private final Environment globalEnv;
+
+    public ClosureCompiler() {
+        final var globalEnv = new Environment();
+        List.of(new Clock()).forEach(f -> globalEnv.define(Symbol.of(f.name()), f));
+        this.globalEnv = globalEnv;
+    }
+
+    @Override
+    public void interpret(List<Stmt> statements) {
+        final StmtNode program = compile(statements);
+        try {
+            program.execute(globalEnv);
+        } catch (Interpreter.RuntimeError error) {
+            Reporter.runtimeError(error);
+        }
+    }
+
+    public StmtNode compile(List<Stmt> statements) {
+        final StmtNode[] nodes = statements.stream().map(this::compile).toArray(StmtNode[]::new);
+        return env -> {
+            for (final StmtNode node : nodes) {
+                final Object result = node.execute(env);
+                if (result != NORMAL) return result;
+            }
+            return NORMAL;
+        };
+    }
+
+    /// Statements are only wrapped to be counted under `--jmx`, a normal run's nodes stay as they are
+    private StmtNode compile(Stmt stmt) {
+        final StmtNode node = stmt.accept(this);
+        if (!RuntimeStats.active) return node;
+        return env -> {
+            RuntimeStats.statements.increment();
+            return node.execute(env);
+        };
+    }
+
+    private ExprNode compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt) {
+        final StmtNode body = compile(stmt.statements);
+        final int scopeSize = stmt.scopeSize;
+        return env -> body.execute(env.newChild(scopeSize));
+    }
+
+    @Override
+    public StmtNode visitClassStmt(Stmt.Class stmt) {
+        final String name = stmt.name.getLexeme();
+        final ExprNode superClassNode = stmt.superClass != null ? compile(stmt.superClass) : null;
+        final Token superClassName = stmt.superClass != null ? stmt.superClass.name : null;
+        final List<Stmt.Function> methods = stmt.methods;
+        final StmtNode[] bodies = methods.stream().map(m -> compile(m.body)).toArray(StmtNode[]::new);
+        return env -> {
+            LoxClass superClass = null;
+            Environment classEnv = env;
+            if (superClassNode != null) {
+                final Object value = superClassNode.evaluate(env);
+                if (!(value instanceof LoxClass)) {
+                    throw new Interpreter.RuntimeError(superClassName, "Superclass must be a class.");
+                }
+                superClass = (LoxClass) value;
+                classEnv = env.newChild(1);
+                classEnv.append(superClass);
+            }
+            final LoxFunction[] fns = new LoxFunction[bodies.length];
+            for (int i = 0; i < bodies.length; i++) {
+                final Stmt.Function method = methods.get(i);
+                fns[i] = new CompiledFunction(method, bodies[i], classEnv, method.name.getLexeme().equals("init"), null);
+            }
+            env.define(stmt.name.getSymbol(), new LoxClass(name, superClass, Arrays.asList(fns)));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        final ExprNode expression = compile(stmt.expression);
+        return env -> {
+            expression.evaluate(env);
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitIfStmt(Stmt.If stmt) {
+        final ExprNode condition = compile(stmt.condition);
+        final StmtNode thenBranch = compile(stmt.thenBranch);
+        if (stmt.elseBranch == null) {
+            return env -> Interpreter.isTruthy(condition.evaluate(env)) ? thenBranch.execute(env) : NORMAL;
+        }
+        final StmtNode elseBranch = compile(stmt.elseBranch);
+        return env -> Interpreter.isTruthy(condition.evaluate(env)) ? thenBranch.execute(env) : elseBranch.execute(env);
+    }
+
+    @Override
+    public StmtNode visitFunctionStmt(Stmt.Function stmt) {
+        final StmtNode body = compile(stmt.body);
+        final Symbol name = stmt.name.getSymbol();
+        return env -> {
+            env.define(name, new CompiledFunction(stmt, body, env, false, null));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitPrintStmt(Stmt.Print stmt) {
+        final ExprNode expression = compile(stmt.expression);
+        return env -> {
+            System.out.println(Interpreter.stringify(expression.evaluate(env)));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(Stmt.While stmt) {
+        final ExprNode condition = compile(stmt.condition);
+        final StmtNode body = compile(stmt.body);
+        return env -> {
+            while (Interpreter.isTruthy(condition.evaluate(env))) {
+                final Object result = body.execute(env);
+                if (result != NORMAL) return result;
+            }
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return env -> null;
+        final ExprNode value = compile(stmt.value);
+        return value::evaluate;
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt) {
+        final Symbol name = stmt.name.getSymbol();
+        if (stmt.initializer == null) {
+            return env -> {
+                env.define(name, null);
+                return NORMAL;
+            };
+        }
+        final ExprNode initializer = compile(stmt.initializer);
+        return env -> {
+            env.define(name, initializer.evaluate(env));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr) {
+        final ExprNode value = compile(expr.value);
+        final Token name = expr.name;
+        if (!expr.local) {
+            return env -> {
+                final Object result = value.evaluate(env);
+                globalEnv.assign(name, result);
+                return result;
+            };
+        }
+        final int depth = expr.depth;
+        final int slot = expr.slot;
+        return env -> {
+            final Object result = value.evaluate(env);
+            env.assignAt(depth, slot, result);
+            return result;
+        };
+    }
+
+    @Override
+    public ExprNode visitSetExpr(Expr.Set expr) {
+        final ExprNode object = compile(expr.object);
+        final ExprNode value = compile(expr.value);
+        final Token name = expr.name;
+        return env -> {
+            final LoxInstance instance = (LoxInstance) object.evaluate(env);
+            instance.set(name, value.evaluate(env));
+            return null;
+        };
+    }
+
+    private static double number(Token operator, Object operand) {
+        if (!(operand instanceof Double)) throw new Interpreter.RuntimeError(operator, "Operand must be a number");
+        return (double) operand;
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr) {
+        final ExprNode left = compile(expr.left);
+        final ExprNode right = compile(expr.right);
+        final Token operator = expr.operator;
+        return switch (operator.getType()) {
+            case PLUS, MINUS, STAR, SLASH, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> BinaryNode.create(operator, left, right);
+            case EQUAL_EQUAL -> env -> {
+                final Object l = left.evaluate(env);
+                return Interpreter.isEqual(l, right.evaluate(env));
+            };
+            case BANG_EQUAL -> env -> {
+                final Object l = left.evaluate(env);
+                return !Interpreter.isEqual(l, right.evaluate(env));
+            };
+            default -> env -> {
+                left.evaluate(env);
+                right.evaluate(env);
+                return null;
+            };
+        };
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr) {
+        final Object value = expr.value;
+        return env -> value;
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr) {
+        final ExprNode right = compile(expr.right);
+        final Token operator = expr.operator;
+        return switch (operator.getType()) {
+            case MINUS -> env -> -number(operator, right.evaluate(env));
+            case BANG -> env -> !Interpreter.isTruthy(right.evaluate(env));
+            default -> env -> {
+                right.evaluate(env);
+                return null;
+            };
+        };
+    }
+
+    @Override
+    public ExprNode visitTernaryExpr(Expr.Ternary expr) {
+        final ExprNode condition = compile(expr.condition);
+        final ExprNode left = compile(expr.left);
+        final ExprNode right = compile(expr.right);
+        return env -> Interpreter.isTruthy(condition.evaluate(env)) ? left.evaluate(env) : right.evaluate(env);
+    }
+
+    private ExprNode lookupVariable(Token name, boolean local, int depth, int slot) {
+        if (!local) return env -> globalEnv.getVar(name);
+        return env -> env.getAt(depth, slot);
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr) {
+        return lookupVariable(expr.name, expr.local, expr.depth, expr.slot);
+    }
+
+    @Override
+    public ExprNode visitThisExpr(Expr.This expr) {
+        return lookupVariable(expr.keyword, expr.local, expr.depth, expr.slot);
+    }
+
+    @Override
+    public ExprNode visitSuperExpr(Expr.Super expr) {
+        final int distance = expr.depth;
+        final Token method = expr.method;
+        return env -> {
+            final LoxClass superClass = (LoxClass) env.getAt(distance, 0);
+            final LoxInstance instance = (LoxInstance) env.getAt(distance - 1, 0);
+            final LoxFunction superMethod = superClass.getMethod(method.getSymbol());
+            if (superMethod == null) {
+                throw new Interpreter.RuntimeError(method, "Method `" + method.getLexeme() + "` not found.");
+            }
+            return superMethod.bind(instance);
+        };
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(Expr.Logical expr) {
+        final ExprNode left = compile(expr.left);
+        final ExprNode right = compile(expr.right);
+        return switch (expr.operator.getType()) {
+            case AND -> env -> {
+                final Object l = left.evaluate(env);
+                return !Interpreter.isTruthy(l) ? l : right.evaluate(env);
+            };
+            case OR -> env -> {
+                final Object l = left.evaluate(env);
+                return Interpreter.isTruthy(l) ? l : right.evaluate(env);
+            };
+            default -> env -> null;
+        };
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr) {
+        final ExprNode[] args = expr.args.stream().map(this::compile).toArray(ExprNode[]::new);
+        final Token paren = expr.paren;
+        final boolean tail = expr.tail;
+        if (expr.callee instanceof Expr.Get get) return compileInvoke(get, args, paren, tail);
+        final ExprNode callee = compile(expr.callee);
+        return env -> {
+            final Object calleeValue = callee.evaluate(env);
+            final Object[] values = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                values[i] = args[i].evaluate(env);
+            }
+            if (!(calleeValue instanceof final LoxCallable calleeFn)) {
+                throw new Interpreter.RuntimeError(paren, "Can only call functions and classes.");
+            }
+            if (calleeFn.arity() != values.length) {
+                throw new Interpreter.RuntimeError(paren, "Expected " + calleeFn.arity() + " arguments but got " + values.length + ".");
+            }
+            if (tail && calleeFn instanceof LoxFunction function && function.isTailCallable()) {
+                return function.tailCall(Arrays.asList(values));
+            }
+            if (Profiler.active) Profiler.callLine = paren.getLine();
+            // Compiled functions never go back to the tree-walker, so there is no Interpreter to hand over
+            try {
+                return calleeFn.call(Arrays.asList(values), null);
+            } catch (StackOverflowError error) {
+                throw Interpreter.stackOverflow(paren);
+            }
+        };
+    }
+
+    /// `instance.method(args)` runs the method with the instance as receiver, never materializing the bound method
+    private ExprNode compileInvoke(Expr.Get get, ExprNode[] args, Token paren, boolean tail) {
+        final ExprNode object = compile(get.object);
+        final Token name = get.name;
+        return env -> {
+            final LoxInstance instance = (LoxInstance) object.evaluate(env);
+            final LoxFunction method = instance.findMethod(name);
+            final Object callee = method == null ? instance.get(name) : method;
+            final Object[] values = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                values[i] = args[i].evaluate(env);
+            }
+            if (!(callee instanceof final LoxCallable calleeFn)) {
+                throw new Interpreter.RuntimeError(paren, "Can only call functions and classes.");
+            }
+            if (calleeFn.arity() != values.length) {
+                throw new Interpreter.RuntimeError(paren, "Expected " + calleeFn.arity() + " arguments but got " + values.length + ".");
+            }
+            if (method != null && tail && method.isTailCallable()) {
+                return new LoxFunction.TailCall(method, instance, Arrays.asList(values));
+            }
+            if (Profiler.active) Profiler.callLine = paren.getLine();
+            try {
+                if (method != null) return method.callWith(instance, Arrays.asList(values), null);
+                return calleeFn.call(Arrays.asList(values), null);
+            } catch (StackOverflowError error) {
+                throw Interpreter.stackOverflow(paren);
+            }
+        };
+    }
+
+    @Override
+    public ExprNode visitGetExpr(Expr.Get expr) {
+        final ExprNode object = compile(expr.object);
+        final Token name = expr.name;
+        return env -> ((LoxInstance) object.evaluate(env)).get(name);
+    }
+}
@@ -0,0 +1,9 @@
+package com.leoiacovini.lox;
+
+import java.util.List;
+
+/// A backend able to run an already resolved program. Engines keep their globals between calls, so the REPL can
+/// feed them one line at a time.
+public interface Engine {
+    void interpret(List<Stmt> statements);
+}
@@ -1,60 +1,77 @@
 package com.leoiacovini.lox;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Environment {
 
+    /// Resolved address of a local variable: how many scopes up and which slot inside that scope.
+    record Slot(int depth, int index) {
+    }
+
     private final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    // Only the global environment is keyed by name, local scopes are fixed-size frames indexed by the Resolver slots
+    private final Map<Symbol, Object> values;
+    private final Object[] slots;
+    private int defined = 0;
 
     Environment() {
-        this(null);
+        if (RuntimeStats.active) RuntimeStats.environments.increment();
+        this.enclosing = null;
+        this.values = new HashMap<>();
+        this.slots = null;
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
+        if (RuntimeStats.active) RuntimeStats.environments.increment();
         this.enclosing = enclosing;
+        this.values = null;
+        this.slots = new Object[size];
     }
 
     public Environment getEnclosing() {
         return enclosing;
     }
 
-    public Environment newChild() {
-        return new Environment(this);
+    public Environment newChild(int size) {
+        return new Environment(this, size);
     }
 
-    public void define(String varName, Object value) {
-        values.put(varName, value);
+    private boolean isGlobal() {
+        return slots == null;
     }
 
-    public void assign(Token varName, Object value) {
-        if (values.containsKey(varName.getLexeme())) {
-            values.put(varName.getLexeme(), value);
-        } else if (enclosing != null) {
-            enclosing.assign(varName, value);
+    /// Globals are bound by name, locals take the next free slot, in the same order the Resolver declared them
+    void define(Symbol varName, Object value) {
+        if (isGlobal()) {
+            values.put(varName, value);
         } else {
+            slots[defined++] = value;
+        }
+    }
+
+    /// Fills the next slot of a local frame, whose names only the Resolver needs
+    void append(Object value) {
+        slots[defined++] = value;
+    }
+
+    public void assign(Token varName, Object value) {
+        if (!values.containsKey(varName.getSymbol())) {
             throw new Interpreter.RuntimeError(varName, "Cannot assign undefined variable '" + varName + "'");
         }
+        values.put(varName.getSymbol(), value);
     }
 
     public Object getVar(Token varName) {
-        if (values.containsKey(varName.getLexeme())) {
-            return values.get(varName.getLexeme());
-        } else if (enclosing != null) {
-            return enclosing.getVar(varName);
-        } else {
+        final Object value = values.get(varName.getSymbol());
+        if (value == null && !values.containsKey(varName.getSymbol())) {
             throw new Interpreter.RuntimeError(varName, "Undefined variable '" + varName.getLexeme() + "'.");
         }
+        return value;
     }
 
-    public Environment copy() {
-        final var env = new Environment(this.enclosing != null ? this.enclosing.copy() : null);
-        this.values.forEach(env::define);
-        return env;
-    }
-
-    public Environment ancestor(Integer distance) {
+    public Environment ancestor(int distance) {
         var env = this;
         for (int i = 0; i < distance; i++) {
             env = env.enclosing;
@@ -62,16 +79,17 @@ public class Environment {
         return env;
     }
 
-    public Object getAt(Integer distance, String name) {
-        return ancestor(distance).values.get(name);
+    public Object getAt(int distance, int slot) {
+        return ancestor(distance).slots[slot];
     }
 
-    public void assignAt(Integer distance, Token varName, Object value) {
-        ancestor(distance).values.put(varName.getLexeme(), value);
+    public void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
     }
 
     @Override
     public String toString() {
-        return "<Environment " + values.toString() + " >";
+        if (isGlobal()) return "<Environment " + values.toString() + " >";
+        return "<Environment " + Arrays.toString(slots) + " >";
     }
 }
@@ -44,6 +44,9 @@ abstract class Expr {
 
         final Token name;
         final Expr value;
+        boolean local;
+        int depth;
+        int slot;
     }
 
     static class Binary extends Expr {
@@ -134,6 +137,10 @@ abstract class Expr {
         }
 
         final Token name;
+        boolean local;
+        int depth;
+        int slot;
+        Stmt.Var declaration;
     }
 
     static class Logical extends Expr {
@@ -168,6 +175,7 @@ abstract class Expr {
         final Expr callee;
         final Token paren;
         final List<Expr> args;
+        boolean tail;
     }
 
     static class Get extends Expr {
@@ -213,6 +221,9 @@ abstract class Expr {
         }
 
         final Token keyword;
+        boolean local;
+        int depth;
+        int slot;
     }
 
     static class Super extends Expr {
@@ -228,6 +239,7 @@ abstract class Expr {
 
         final Token keyword;
         final Token method;
+        int depth;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
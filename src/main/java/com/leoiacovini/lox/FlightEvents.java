@@ -0,0 +1,75 @@
+package com.leoiacovini.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/// JDK Flight Recorder events for Lox execution, so a recording of a Lox program shows its phases, slow calls and
+/// errors next to GC and allocation data. Java stack traces are left out, they'd only show interpreter frames.
+///
+/// No event is created before the recorder is initialized, by `-XX:StartFlightRecording` or a later `jcmd JFR.start`:
+/// the first one would start the recorder itself, which takes longer than most Lox programs run. Per call even an
+/// event that's never committed costs more than the JIT manages to remove, so the check stays on the hot paths.
+final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    /// A single static read, true once a recording was ever started in this JVM
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    @Name("lox.FunctionCall")
+    @Label("Lox Function Call")
+    @Category("Lox")
+    @Description("A call to a Lox function or method, tail calls it made included")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class FunctionCall extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Declared At Line")
+        int line;
+    }
+
+    @Name("lox.Instantiation")
+    @Label("Lox Class Instantiation")
+    @Category("Lox")
+    @Description("A new instance, its initializer included. Off by default, there is one per instance.")
+    @StackTrace(false)
+    @Enabled(false)
+    static final class Instantiation extends Event {
+        @Label("Class")
+        String className;
+    }
+
+    @Name("lox.Phase")
+    @Label("Lox Phase")
+    @Category("Lox")
+    @Description("Parsing a program, its scanning included, then resolving, optimizing or running it")
+    @StackTrace(false)
+    static final class Phase extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("lox.RuntimeError")
+    @Label("Lox Runtime Error")
+    @Category("Lox")
+    @StackTrace(false)
+    static final class RuntimeError extends Event {
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+    }
+}
@@ -2,11 +2,10 @@ package com.leoiacovini.lox;
 
 import com.leoiacovini.lox.globals.Clock;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+public class Interpreter implements Engine, Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     static class RuntimeError extends RuntimeException {
         final private Token token;
@@ -21,41 +20,32 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
-    static class Return extends RuntimeException {
-        final private Object value;
-
-        Return(Object value) {
-            super(null, null, false, false);
-            this.value = value;
-        }
-
-        public Object getValue() {
-            return value;
-        }
+    /// Raised in place of a StackOverflowError by the call that ran out of Java stack. Engines running Lox calls on the
+    /// Java stack run out of it first, the vm engine keeps its frames on the heap and reports its own.
+    static RuntimeError stackOverflow(Token paren) {
+        return new RuntimeError(paren, "Stack overflow.");
     }
 
-    private final Environment environment;
-    private final Environment globalEnv;
-    private final Map<Expr, Integer> locals;
+    /// Completion of a statement that lets execution go on with the next one. Any other completion is the value of a
+    /// `return` making its way out to the enclosing LoxFunction.call, so returning never throws.
+    static final Object NORMAL = new Object();
 
-    Interpreter(Environment environment, Environment globalEnv, Map<Expr, Integer> locals) {
-        this.environment = environment;
-        this.globalEnv = globalEnv;
-        this.locals = locals;
-    }
+    // The innermost scope being executed, swapped in and out by interpretBlock
+    private Environment environment;
+    private final Environment globalEnv;
 
     Interpreter() {
         final var globalEnv = new Environment();
-        List.of(new Clock()).forEach(f -> globalEnv.define(f.name(), f));
+        List.of(new Clock()).forEach(f -> globalEnv.define(Symbol.of(f.name()), f));
         this.environment = globalEnv;
         this.globalEnv = globalEnv;
-        this.locals = new HashMap<>();
     }
 
     public Environment getEnvironment() {
         return this.environment;
     }
 
+    @Override
     public void interpret(List<Stmt> statements) {
         try {
             for (final var stmt : statements) {
@@ -66,59 +56,62 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
-    private void executeStmt(Stmt stmt) {
-        stmt.accept(this);
-    }
-
-    public void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    private Object executeStmt(Stmt stmt) {
+        if (RuntimeStats.active) RuntimeStats.statements.increment();
+        return stmt.accept(this);
     }
 
     private Object evaluateExpr(Expr expr) {
         return expr.accept(this);
     }
 
-    private Interpreter fork(Environment environment) {
-        return new Interpreter(environment, this.globalEnv, this.locals);
-    }
-
-    public void interpretBlock(List<Stmt> block, Environment environment) {
-        final var innerInterpreter = fork(environment);
-        innerInterpreter.interpret(block);
+    /// Runs the statements inside `environment`, restoring the current one on the way out. Returns NORMAL, or the
+    /// value of the `return` that ended the block early. Runtime errors propagate, only `interpret` reports them.
+    public Object interpretBlock(List<Stmt> block, Environment environment) {
+        final Environment previous = this.environment;
+        try {
+            this.environment = environment;
+            for (final var stmt : block) {
+                final Object completion = executeStmt(stmt);
+                if (completion != NORMAL) return completion;
+            }
+            return NORMAL;
+        } finally {
+            this.environment = previous;
+        }
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        interpretBlock(stmt.statements, this.environment.newChild());
-        return null;
+    public Object visitBlockStmt(Stmt.Block stmt) {
+        return interpretBlock(stmt.statements, this.environment.newChild(stmt.scopeSize));
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Object visitExpressionStmt(Stmt.Expression stmt) {
         evaluateExpr(stmt.expression);
-        return null;
+        return NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Object visitIfStmt(Stmt.If stmt) {
         final var conditionResult = evaluateExpr(stmt.condition);
         if (isTruthy(conditionResult)) {
-            executeStmt(stmt.thenBranch);
+            return executeStmt(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
-            executeStmt(stmt.elseBranch);
+            return executeStmt(stmt.elseBranch);
         }
-        return null;
+        return NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
+    public Object visitFunctionStmt(Stmt.Function stmt) {
         final var loxFunction = new LoxFunction(stmt, environment, false);
-        environment.define(stmt.name.getLexeme(), loxFunction);
-        return null;
+        environment.define(stmt.name.getSymbol(), loxFunction);
+        return NORMAL;
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
+    public Object visitClassStmt(Stmt.Class stmt) {
         Object superClass = null;
         if (stmt.superClass != null) {
             superClass = evaluateExpr(stmt.superClass);
@@ -126,13 +119,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 throw new RuntimeError(stmt.superClass.name, "Superclass must be a class.");
             }
         }
-        environment.define(stmt.name.getLexeme(), null);
 
         // Define Class Env
         Environment classEnv;
         if (stmt.superClass != null) {
-            classEnv = environment.newChild();
-            classEnv.define("super", superClass);
+            classEnv = environment.newChild(1);
+            classEnv.append(superClass);
         } else {
             classEnv = environment;
         }
@@ -143,51 +135,53 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 .toList();
         LoxClass klass = new LoxClass(stmt.name.getLexeme(), (LoxClass) superClass, fns);
 
-        environment.assign(stmt.name, klass);
-        return null;
+        environment.define(stmt.name.getSymbol(), klass);
+        return NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Object visitPrintStmt(Stmt.Print stmt) {
         final var evaluatedExpr = evaluateExpr(stmt.expression);
         System.out.println(stringify(evaluatedExpr));
-        return null;
+        return NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
+    public Object visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluateExpr(stmt.condition))) {
-            executeStmt(stmt.body);
+            final Object completion = executeStmt(stmt.body);
+            if (completion != NORMAL) return completion;
         }
-        return null;
+        return NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
-        Object value = null;
-        if (stmt.value != null) value = evaluateExpr(stmt.value);
-        throw new Return(value);
+    public Object visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return null;
+        return evaluateExpr(stmt.value);
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Object visitVarStmt(Stmt.Var stmt) {
         if (stmt.initializer != null) {
             final var initialValue = evaluateExpr(stmt.initializer);
-            environment.define(stmt.name.getLexeme(), initialValue);
+            environment.define(stmt.name.getSymbol(), initialValue);
         } else {
-            environment.define(stmt.name.getLexeme(), null);
+            environment.define(stmt.name.getSymbol(), null);
         }
-        return null;
+        return NORMAL;
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
-        Reporter.debug("starting assignExpr for " + expr.name.getLexeme());
         final var value = evaluateExpr(expr.value);
-        final var distance = locals.get(expr);
-        Reporter.debug("assignExpr: " + expr + " with value " + value + " at distance: " + distance);
-        if (distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        // The value itself is left out, stringifying it would flatten ropes on every assignment
+        if (Trace.RUNTIME) {
+            if (expr.local) Trace.trace(Trace.Category.RUNTIME, "assign `{}` at depth {}, slot {}", expr.name.getLexeme(), expr.depth, expr.slot);
+            else Trace.trace(Trace.Category.RUNTIME, "assign global `{}`", expr.name.getLexeme());
+        }
+        if (expr.local) {
+            environment.assignAt(expr.depth, expr.slot, value);
         } else {
             globalEnv.assign(expr.name, value);
         }
@@ -204,53 +198,101 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        switch (expr.operator.getType()) {
+            case MINUS, STAR, SLASH:
+                return LoxNumber.box(evaluateNumber(expr));
+            case PLUS:
+                if (isNumeric(expr)) return LoxNumber.box(evaluateNumber(expr));
+                break;
+            case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL:
+                return compareNumbers(expr);
+            default:
+                break;
+        }
         final var left = evaluateExpr(expr.left);
         final var right = evaluateExpr(expr.right);
         return switch (expr.operator.getType()) {
             case PLUS -> {
                 if (left instanceof Double && right instanceof Double) {
-                    yield (double) left + (double) right;
-                } else if (left instanceof String && right instanceof String) {
-                    //noinspection RedundantCast
-                    yield (String) left + (String) right;
+                    yield LoxNumber.box((double) left + (double) right);
+                } else if (Rope.isString(left) && Rope.isString(right)) {
+                    yield Rope.concat(left, right);
                 } else {
                     throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
                 }
             }
-            case MINUS -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left - (double) right;
-            }
-            case STAR -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left * (double) right;
-            }
-            case SLASH -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left / (double) right;
-            }
-            case GREATER -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left > (double) right;
-            }
-            case GREATER_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left >= (double) right;
-            }
-            case LESS -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left < (double) right;
-            }
-            case LESS_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
-                yield (double) left <= (double) right;
-            }
             case EQUAL_EQUAL -> isEqual(left, right);
             case BANG_EQUAL -> !isEqual(left, right);
             default -> null;
         };
     }
 
+    /// Whether the expression can only produce a number, or fail with its own error while being evaluated
+    private static boolean isNumeric(Expr expr) {
+        if (expr instanceof Expr.Literal literal) return literal.value instanceof Double;
+        if (expr instanceof Expr.Grouping grouping) return isNumeric(grouping.expression);
+        if (expr instanceof Expr.Unary unary) return unary.operator.getType() == Token.TokenType.MINUS;
+        if (expr instanceof Expr.Binary binary) {
+            return switch (binary.operator.getType()) {
+                case MINUS, STAR, SLASH -> true;
+                case PLUS -> isNumeric(binary.left) && isNumeric(binary.right);
+                default -> false;
+            };
+        }
+        return false;
+    }
+
+    /// Evaluates a numeric expression as a primitive, so the intermediate results of an arithmetic tree are never
+    /// boxed. Operands that aren't numeric are type-checked once both sides are evaluated, like the generic path does.
+    private double evaluateNumber(Expr expr) {
+        if (expr instanceof Expr.Literal literal) return (double) literal.value;
+        if (expr instanceof Expr.Grouping grouping) return evaluateNumber(grouping.expression);
+        if (expr instanceof Expr.Unary unary) return -numberOperand(unary.right, unary.operator);
+        final Expr.Binary binary = (Expr.Binary) expr;
+        if (isNumeric(binary.left)) {
+            final double left = evaluateNumber(binary.left);
+            return arithmetic(binary.operator, left, numberOperand(binary.right, binary.operator));
+        }
+        final Object left = evaluateExpr(binary.left);
+        final double right = numberOperand(binary.right, binary.operator);
+        return arithmetic(binary.operator, checkNumberOperand(binary.operator, left), right);
+    }
+
+    private boolean compareNumbers(Expr.Binary binary) {
+        if (isNumeric(binary.left)) {
+            final double left = evaluateNumber(binary.left);
+            return compare(binary.operator, left, numberOperand(binary.right, binary.operator));
+        }
+        final Object left = evaluateExpr(binary.left);
+        final double right = numberOperand(binary.right, binary.operator);
+        return compare(binary.operator, checkNumberOperand(binary.operator, left), right);
+    }
+
+    private double numberOperand(Expr operand, Token operator) {
+        if (isNumeric(operand)) return evaluateNumber(operand);
+        return checkNumberOperand(operator, evaluateExpr(operand));
+    }
+
+    private static double arithmetic(Token operator, double left, double right) {
+        return switch (operator.getType()) {
+            case PLUS -> left + right;
+            case MINUS -> left - right;
+            case STAR -> left * right;
+            case SLASH -> left / right;
+            default -> throw new IllegalArgumentException("Not an arithmetic operator: " + operator.getType());
+        };
+    }
+
+    private static boolean compare(Token operator, double left, double right) {
+        return switch (operator.getType()) {
+            case GREATER -> left > right;
+            case GREATER_EQUAL -> left >= right;
+            case LESS -> left < right;
+            case LESS_EQUAL -> left <= right;
+            default -> throw new IllegalArgumentException("Not a comparison operator: " + operator.getType());
+        };
+    }
+
     @Override
     public Object visitGroupingExpr(Expr.Grouping expr) {
         return evaluateExpr(expr.expression);
@@ -263,12 +305,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.getType() == Token.TokenType.MINUS) return LoxNumber.box(evaluateNumber(expr));
         final var evaluated = evaluateExpr(expr.right);
         return switch (expr.operator.getType()) {
-            case MINUS -> {
-                checkNumberOperands(expr.operator, evaluated);
-                yield -(double) evaluated;
-            }
             case BANG -> !isTruthy(evaluated);
             default -> null;
         };
@@ -284,11 +323,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
-    private Object lookupVariable(Token name, Expr expr) {
-        final var distance = locals.get(expr);
-        Reporter.debug("lookupVariable `" + name.getLexeme() + "` at distance: " + distance);
-        if (distance != null) {
-            return environment.getAt(distance, name.getLexeme());
+    private Object lookupVariable(Token name, boolean local, int depth, int slot) {
+        if (Trace.RUNTIME) {
+            if (local) Trace.trace(Trace.Category.RUNTIME, "lookup `{}` at depth {}, slot {}", name.getLexeme(), depth, slot);
+            else Trace.trace(Trace.Category.RUNTIME, "lookup global `{}`", name.getLexeme());
+        }
+        if (local) {
+            return environment.getAt(depth, slot);
         } else {
             return globalEnv.getVar(name);
         }
@@ -296,20 +337,21 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookupVariable(expr.name, expr);
+        return lookupVariable(expr.name, expr.local, expr.depth, expr.slot);
     }
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookupVariable(expr.keyword, expr);
+        return lookupVariable(expr.keyword, expr.local, expr.depth, expr.slot);
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        final int distance = locals.get(expr);
-        final LoxClass superClass = (LoxClass) environment.getAt(distance, "super");
-        final LoxInstance instance = (LoxInstance) environment.getAt(distance - 1, "this");
-        LoxFunction method = superClass.getMethod(expr.method.getLexeme());
+        final int distance = expr.depth;
+        // `super` lives alone in a single-slot scope right around the method frame, whose slot 0 holds `this`
+        final LoxClass superClass = (LoxClass) environment.getAt(distance, 0);
+        final LoxInstance instance = (LoxInstance) environment.getAt(distance - 1, 0);
+        LoxFunction method = superClass.getMethod(expr.method.getSymbol());
         if (method == null) {
             throw new RuntimeError(expr.method, "Method `" + expr.method.getLexeme() + "` not found.");
         }
@@ -328,18 +370,57 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        final var callee = evaluateExpr(expr.callee);
-        final var args = expr.args.stream().map(this::evaluateExpr).toList();
+        if (expr.callee instanceof Expr.Get get) return invokeMethod(get, expr);
+        return callValue(evaluateExpr(expr.callee), expr);
+    }
+
+    /// `instance.method(args)` runs the method with the instance as receiver, never materializing the bound method
+    private Object invokeMethod(Expr.Get get, Expr.Call expr) {
+        final LoxInstance instance = (LoxInstance) evaluateExpr(get.object);
+        final LoxFunction method = instance.findMethod(get.name);
+        if (method == null) return callValue(instance.get(get.name), expr);
+        final var args = evaluateArgs(expr.args);
+        if (method.arity() != args.size()) {
+            throw new RuntimeError(expr.paren, "Expected " + method.arity() + " arguments but got " + args.size() + ".");
+        }
+        if (expr.tail && method.isTailCallable()) return new LoxFunction.TailCall(method, instance, args);
+        if (Profiler.active) Profiler.callLine = expr.paren.getLine();
+        try {
+            return method.callWith(instance, args, this);
+        } catch (StackOverflowError error) {
+            throw stackOverflow(expr.paren);
+        }
+    }
+
+    private List<Object> evaluateArgs(List<Expr> exprs) {
+        final Object[] values = new Object[exprs.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = evaluateExpr(exprs.get(i));
+        }
+        return Arrays.asList(values);
+    }
+
+    private Object callValue(Object callee, Expr.Call expr) {
+        final var args = evaluateArgs(expr.args);
         if (!(callee instanceof final LoxCallable calleeFn)) {
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
         if (calleeFn.arity() != args.size()) {
             throw new RuntimeError(expr.paren, "Expected " + calleeFn.arity() + " arguments but got " + args.size() + ".");
         }
-        return calleeFn.call(args, this);
+        // The TailCall travels up as the value of the `return` to the LoxFunction running it
+        if (expr.tail && calleeFn instanceof LoxFunction function && function.isTailCallable()) {
+            return function.tailCall(args);
+        }
+        if (Profiler.active) Profiler.callLine = expr.paren.getLine();
+        try {
+            return calleeFn.call(args, this);
+        } catch (StackOverflowError error) {
+            throw stackOverflow(expr.paren);
+        }
     }
 
-    private boolean isTruthy(Object value) {
+    static boolean isTruthy(Object value) {
         if (value instanceof Boolean) {
             return (boolean) value;
         } else return value != null;
@@ -351,19 +432,20 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return instance.get(expr.name);
     }
 
-    private boolean isEqual(Object first, Object second) {
+    static boolean isEqual(Object first, Object second) {
         if (first == null && second == null) return true;
         if (first == null) return false;
+        // Only Rope knows how to compare itself with a plain String
+        if (second instanceof Rope) return second.equals(first);
         return first.equals(second);
     }
 
-    private void checkNumberOperands(Token operator, Object... operands) {
-        for (final var operand : operands) {
-            if (!(operand instanceof Double)) throw new RuntimeError(operator, "Operand must be a number");
-        }
+    private double checkNumberOperand(Token operator, Object operand) {
+        if (!(operand instanceof Double)) throw new RuntimeError(operator, "Operand must be a number");
+        return (double) operand;
     }
 
-    private String stringify(Object obj) {
+    static String stringify(Object obj) {
         if (obj == null) return "nil";
         if (obj instanceof Double) {
             String text = obj.toString();
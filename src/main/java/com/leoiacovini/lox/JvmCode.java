@@ -0,0 +1,9 @@
+package com.leoiacovini.lox;
+
+import java.util.List;
+
+/// Entry point of a Lox function, or of a whole script, compiled to a hidden JVM class by the JvmCompiler. The
+/// receiver is only set for methods.
+interface JvmCode {
+    Object invoke(Environment closure, LoxInstance receiver, List<Object> args, Interpreter interpreter);
+}
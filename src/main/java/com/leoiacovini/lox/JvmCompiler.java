@@ -0,0 +1,664 @@
+package com.leoiacovini.lox;
+
+import com.leoiacovini.lox.jvm.ClassWriter;
+import com.leoiacovini.lox.jvm.CodeBuilder;
+import com.leoiacovini.lox.jvm.Label;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import static com.leoiacovini.lox.jvm.Opcodes.*;
+
+/// Engine that compiles every Lox function (and the top-level script) into its own hidden JVM class, so HotSpot can
+/// JIT Lox code like any other Java method. Functions whose body declares no nested function or class keep all their
+/// locals in JVM local variables and create no Environment at all; the others materialize Environments exactly like
+/// the tree-walker, but only for the slots their inner functions and methods capture.
+///
+/// A unit the JVM won't take (one going over a class file limit, such as a string constant too long for the constant
+/// pool) is left to the tree-walking Interpreter: such a function has no compiled code and runs as a plain LoxFunction. The compiled code
+/// belongs to this engine alone, the AST it was compiled from can still be run by any other engine.
+public class JvmCompiler implements Engine {
+
+    // Hidden classes get a unique suffix appended to this name when defined
+    private static final String CLASS_NAME = "com/leoiacovini/lox/JvmCompiled";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String OBJECT_DESC = "Ljava/lang/Object;";
+    private static final String CODE = "com/leoiacovini/lox/JvmCode";
+    private static final String RUNTIME = "com/leoiacovini/lox/JvmRuntime";
+    private static final String INTERPRETER = "com/leoiacovini/lox/Interpreter";
+    private static final String ENVIRONMENT = "com/leoiacovini/lox/Environment";
+    private static final String ENVIRONMENT_DESC = "Lcom/leoiacovini/lox/Environment;";
+    private static final String TOKEN = "com/leoiacovini/lox/Token";
+    private static final String SYMBOL = "com/leoiacovini/lox/Symbol";
+    private static final String TOKEN_DESC = "Lcom/leoiacovini/lox/Token;";
+    private static final String FUNCTION_DESC = "Lcom/leoiacovini/lox/Stmt$Function;";
+    private static final String CLASS_DESC = "Lcom/leoiacovini/lox/Stmt$Class;";
+    private static final String CODE_DESC = "L" + CODE + ";";
+    private static final String INVOKE_DESC = "(" + ENVIRONMENT_DESC + "Lcom/leoiacovini/lox/LoxInstance;Ljava/util/List;L"
+            + INTERPRETER + ";)" + OBJECT_DESC;
+    private static final String BINARY_DESC = "(" + OBJECT_DESC + OBJECT_DESC + TOKEN_DESC + ")" + OBJECT_DESC;
+
+    // Fixed JVM locals of the generated `invoke`, Lox locals come right after them
+    private static final int THIS = 0;
+    private static final int CLOSURE = 1;
+    private static final int RECEIVER = 2;
+    private static final int ARGS = 3;
+    private static final int RUNNER = 4;
+    private static final int ENV = 5;
+    private static final int FIRST_LOCAL = 6;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /// A Lox function whose body runs as JVM code
+    static final class CompiledFunction extends LoxFunction {
+        private final JvmCode code;
+
+        CompiledFunction(Stmt.Function declaration, JvmCode code, Environment closureEnv, boolean isInitializer,
+                         LoxInstance receiver) {
+            super(declaration, closureEnv, isInitializer, receiver);
+            this.code = code;
+        }
+
+        @Override
+        protected LoxFunction withReceiver(LoxInstance instance) {
+            return new CompiledFunction(declaration, code, closureEnv, isInitializer, instance);
+        }
+
+        @Override
+        protected Object execute(LoxInstance receiver, List<Object> args, Interpreter interpreter) {
+            return code.invoke(closureEnv, receiver, args, interpreter);
+        }
+    }
+
+    private final Interpreter interpreter = new Interpreter();
+    // Code of every function that could be compiled, functions missing from it are left to the tree-walker
+    private final Map<Stmt.Function, JvmCode> functions = new IdentityHashMap<>();
+
+    @Override
+    public void interpret(List<Stmt> statements) {
+        statements.forEach(this::compileFunctions);
+        final JvmCode script = compile(null, statements, false);
+        if (script == null) {
+            interpreter.interpret(statements);
+            return;
+        }
+        try {
+            script.invoke(interpreter.getEnvironment(), null, List.of(), interpreter);
+        } catch (Interpreter.RuntimeError error) {
+            Reporter.runtimeError(error);
+        }
+    }
+
+    /// Compiles every function declared in `stmt`, including methods and functions nested in other functions. Nested
+    /// ones come first, the code creating them refers to theirs.
+    private void compileFunctions(Stmt stmt) {
+        if (stmt instanceof Stmt.Function function) {
+            function.body.forEach(this::compileFunctions);
+            compileFunction(function, false);
+        } else if (stmt instanceof Stmt.Class klass) {
+            for (final Stmt.Function method : klass.methods) {
+                method.body.forEach(this::compileFunctions);
+                compileFunction(method, true);
+            }
+        } else if (stmt instanceof Stmt.Block block) {
+            block.statements.forEach(this::compileFunctions);
+        } else if (stmt instanceof Stmt.If ifStmt) {
+            compileFunctions(ifStmt.thenBranch);
+            if (ifStmt.elseBranch != null) compileFunctions(ifStmt.elseBranch);
+        } else if (stmt instanceof Stmt.While whileStmt) {
+            compileFunctions(whileStmt.body);
+        }
+    }
+
+    private void compileFunction(Stmt.Function function, boolean isMethod) {
+        final JvmCode code = compile(function, function.body, isMethod);
+        if (code != null) functions.put(function, code);
+    }
+
+    /// The compiled code of a function, null when it's left to the tree-walker
+    JvmCode compiled(Stmt.Function function) {
+        return functions.get(function);
+    }
+
+    /// Returns null when the unit has to stay with the tree-walker
+    JvmCode compile(Stmt.Function function, List<Stmt> body, boolean isMethod) {
+        try {
+            final var unit = new Unit(function, body, isMethod);
+            final Class<?> hidden = LOOKUP.defineHiddenClass(unit.toByteArray(), true).lookupClass();
+            return (JvmCode) hidden.getConstructor(Object[].class).newInstance((Object) unit.constants.toArray());
+        } catch (IllegalStateException | LinkageError | ReflectiveOperationException e) {
+            if (Trace.COMPILER) Trace.debug(Trace.Category.COMPILER, "falling back to the interpreter: {}", e);
+            return null;
+        }
+    }
+
+    /// Whether the statements declare a function or a class of their own, in which case they need real Environments for
+    /// the functions and methods to close over
+    private static boolean declaresFunction(List<Stmt> statements) {
+        for (final Stmt stmt : statements) {
+            if (stmt instanceof Stmt.Function || stmt instanceof Stmt.Class) return true;
+            if (stmt instanceof Stmt.Block block && declaresFunction(block.statements)) return true;
+            if (stmt instanceof Stmt.If ifStmt
+                    && (declaresFunction(List.of(ifStmt.thenBranch))
+                    || ifStmt.elseBranch != null && declaresFunction(List.of(ifStmt.elseBranch)))) return true;
+            if (stmt instanceof Stmt.While whileStmt && declaresFunction(List.of(whileStmt.body))) return true;
+        }
+        return false;
+    }
+
+    /// A scope opened by the unit being compiled: where its slots live in JVM locals and which of them are captured
+    private static final class Scope {
+        final int firstLocal;
+        final boolean[] captured;
+        int nextSlot = 0;
+
+        Scope(int firstLocal, boolean[] captured) {
+            this.firstLocal = firstLocal;
+            this.captured = captured;
+        }
+    }
+
+    /// Code generation for a single function body, or for the script when `function` is null
+    private final class Unit implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final ClassWriter writer = new ClassWriter(CLASS_NAME, OBJECT, CODE);
+        private final CodeBuilder code;
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> constantIndexes = new IdentityHashMap<>();
+        private final Stack<Scope> scopes = new Stack<>();
+        private final boolean materialized;
+        private int nextLocal = FIRST_LOCAL;
+
+        Unit(Stmt.Function function, List<Stmt> body, boolean isMethod) {
+            this.materialized = declaresFunction(body);
+            writer.field(ACC_PRIVATE | ACC_FINAL, "k", "[" + OBJECT_DESC);
+            constructor();
+            code = writer.method(ACC_PUBLIC, "invoke", INVOKE_DESC);
+            if (function != null) {
+                if (materialized) {
+                    code.type(NEW, ENVIRONMENT);
+                    code.op(DUP);
+                    code.aload(CLOSURE);
+                    code.iconst(function.scopeSize);
+                    code.invoke(INVOKESPECIAL, ENVIRONMENT, "<init>", "(" + ENVIRONMENT_DESC + "I)V");
+                    code.astore(ENV);
+                }
+                beginScope(function.scopeSize, function.captured);
+                if (isMethod) {
+                    code.aload(RECEIVER);
+                    declare();
+                }
+                for (int i = 0; i < function.params.size(); i++) {
+                    code.aload(ARGS);
+                    code.iconst(i);
+                    code.invoke(INVOKEINTERFACE, "java/util/List", "get", "(I)" + OBJECT_DESC);
+                    declare();
+                }
+            } else if (materialized) {
+                code.aload(CLOSURE);
+                code.astore(ENV);
+            }
+            body.forEach(this::compile);
+            code.op(ACONST_NULL);
+            code.op(ARETURN);
+        }
+
+        private void constructor() {
+            final CodeBuilder init = writer.method(ACC_PUBLIC, "<init>", "([" + OBJECT_DESC + ")V");
+            init.aload(THIS);
+            init.invoke(INVOKESPECIAL, OBJECT, "<init>", "()V");
+            init.aload(THIS);
+            init.aload(1);
+            init.field(PUTFIELD, CLASS_NAME, "k", "[" + OBJECT_DESC);
+            init.op(RETURN);
+        }
+
+        byte[] toByteArray() {
+            return writer.toByteArray();
+        }
+
+        private void compile(Stmt stmt) {
+            if (RuntimeStats.active) code.invoke(INVOKESTATIC, RUNTIME, "statement", "()V");
+            stmt.accept(this);
+        }
+
+        private void compile(Expr expr) {
+            expr.accept(this);
+        }
+
+        private void constant(Object value, String internalName) {
+            final int index = constantIndexes.computeIfAbsent(value, v -> {
+                constants.add(v);
+                return constants.size() - 1;
+            });
+            code.aload(THIS);
+            code.field(GETFIELD, CLASS_NAME, "k", "[" + OBJECT_DESC);
+            code.iconst(index);
+            code.op(AALOAD);
+            if (!internalName.equals(OBJECT)) code.type(CHECKCAST, internalName);
+        }
+
+        private void globals() {
+            constant(interpreter.getEnvironment(), ENVIRONMENT);
+        }
+
+        private void isTruthy() {
+            code.invoke(INVOKESTATIC, INTERPRETER, "isTruthy", "(" + OBJECT_DESC + ")Z");
+        }
+
+        private void beginScope(int size, boolean[] captured) {
+            final var scope = new Scope(nextLocal, captured);
+            nextLocal += size;
+            for (int i = 0; i < size; i++) {
+                code.op(ACONST_NULL);
+                code.astore(scope.firstLocal + i);
+            }
+            scopes.push(scope);
+        }
+
+        private boolean inEnvironment(Scope scope, int slot) {
+            return materialized && scope.captured[slot];
+        }
+
+        /// Stores the value on top of the stack into the next slot of the innermost scope
+        private void declare() {
+            final Scope scope = scopes.peek();
+            final int slot = scope.nextSlot++;
+            if (inEnvironment(scope, slot)) {
+                code.aload(ENV);
+                code.iconst(0);
+                code.iconst(slot);
+                code.invoke(INVOKESTATIC, RUNTIME, "assignAt", "(" + OBJECT_DESC + ENVIRONMENT_DESC + "II)" + OBJECT_DESC);
+                code.op(POP);
+            } else {
+                code.astore(scope.firstLocal + slot);
+            }
+        }
+
+        /// Loads the value of a resolved variable, `depth` scopes up from the innermost one
+        private void load(Token name, boolean local, int depth, int slot) {
+            if (!local) {
+                globals();
+                constant(name, TOKEN);
+                code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "getVar", "(" + TOKEN_DESC + ")" + OBJECT_DESC);
+                return;
+            }
+            final int open = scopes.size();
+            if (depth < open) {
+                final Scope scope = scopes.get(open - 1 - depth);
+                if (!inEnvironment(scope, slot)) {
+                    code.aload(scope.firstLocal + slot);
+                    return;
+                }
+            }
+            environmentAt(depth);
+            code.iconst(slot);
+            code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "getAt", "(II)" + OBJECT_DESC);
+        }
+
+        /// Pushes an Environment and the depth, relative to it, of the scope `depth` levels up from the innermost one
+        private void environmentAt(int depth) {
+            if (materialized) {
+                code.aload(ENV);
+                code.iconst(depth);
+            } else {
+                code.aload(CLOSURE);
+                code.iconst(depth - scopes.size());
+            }
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            if (materialized) {
+                code.aload(ENV);
+                code.iconst(stmt.scopeSize);
+                code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "newChild", "(I)" + ENVIRONMENT_DESC);
+                code.astore(ENV);
+            }
+            beginScope(stmt.scopeSize, stmt.captured);
+            stmt.statements.forEach(this::compile);
+            scopes.pop();
+            if (materialized) {
+                code.aload(ENV);
+                code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "getEnclosing", "()" + ENVIRONMENT_DESC);
+                code.astore(ENV);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            if (scopes.isEmpty()) {
+                globals();
+                constant(stmt.name.getSymbol(), SYMBOL);
+                klass(stmt, CLOSURE);
+                code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "define", "(L" + SYMBOL + ";" + OBJECT_DESC + ")V");
+                return null;
+            }
+            klass(stmt, ENV);
+            declare();
+            return null;
+        }
+
+        /// Pushes a new class whose methods close over the Environment in the `closure` local
+        private void klass(Stmt.Class stmt, int closure) {
+            if (stmt.superClass != null) {
+                compile(stmt.superClass);
+            } else {
+                code.op(ACONST_NULL);
+            }
+            code.aload(closure);
+            constant(stmt, "com/leoiacovini/lox/Stmt$Class");
+            // Methods left to the tree-walker have a null entry
+            final JvmCode[] methods = stmt.methods.stream().map(functions::get).toArray(JvmCode[]::new);
+            constant(methods, "[" + CODE_DESC);
+            code.invoke(INVOKESTATIC, RUNTIME, "klass", "(" + OBJECT_DESC + ENVIRONMENT_DESC + CLASS_DESC + "[" + CODE_DESC + ")"
+                    + OBJECT_DESC);
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            compile(stmt.expression);
+            code.op(POP);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            final Label otherwise = code.newLabel();
+            final Label end = code.newLabel();
+            compile(stmt.condition);
+            isTruthy();
+            code.jump(IFEQ, otherwise);
+            compile(stmt.thenBranch);
+            code.jump(GOTO, end);
+            code.mark(otherwise);
+            if (stmt.elseBranch != null) compile(stmt.elseBranch);
+            code.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            if (scopes.isEmpty()) {
+                globals();
+                constant(stmt.name.getSymbol(), SYMBOL);
+                function(stmt, CLOSURE);
+                code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "define", "(L" + SYMBOL + ";" + OBJECT_DESC + ")V");
+                return null;
+            }
+            function(stmt, ENV);
+            declare();
+            return null;
+        }
+
+        /// Pushes a new function closing over the Environment in the `closure` local, compiled or left to the tree-walker
+        private void function(Stmt.Function stmt, int closure) {
+            final JvmCode compiled = functions.get(stmt);
+            if (compiled != null) {
+                constant(compiled, CODE);
+            } else {
+                code.op(ACONST_NULL);
+            }
+            constant(stmt, "com/leoiacovini/lox/Stmt$Function");
+            code.aload(closure);
+            code.invoke(INVOKESTATIC, RUNTIME, "function", "(" + CODE_DESC + FUNCTION_DESC + ENVIRONMENT_DESC + ")" + OBJECT_DESC);
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            compile(stmt.expression);
+            code.invoke(INVOKESTATIC, RUNTIME, "print", "(" + OBJECT_DESC + ")V");
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            final Label top = code.newLabel();
+            final Label end = code.newLabel();
+            code.mark(top);
+            compile(stmt.condition);
+            isTruthy();
+            code.jump(IFEQ, end);
+            compile(stmt.body);
+            code.jump(GOTO, top);
+            code.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            if (stmt.value != null) {
+                compile(stmt.value);
+            } else {
+                code.op(ACONST_NULL);
+            }
+            code.op(ARETURN);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            if (scopes.isEmpty()) {
+                globals();
+                constant(stmt.name.getSymbol(), SYMBOL);
+                if (stmt.initializer != null) {
+                    compile(stmt.initializer);
+                } else {
+                    code.op(ACONST_NULL);
+                }
+                code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "define", "(L" + SYMBOL + ";" + OBJECT_DESC + ")V");
+                return null;
+            }
+            if (stmt.initializer != null) {
+                compile(stmt.initializer);
+            } else {
+                code.op(ACONST_NULL);
+            }
+            declare();
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            compile(expr.value);
+            if (!expr.local) {
+                globals();
+                constant(expr.name, TOKEN);
+                code.invoke(INVOKESTATIC, RUNTIME, "assignGlobal", "(" + OBJECT_DESC + ENVIRONMENT_DESC + TOKEN_DESC + ")" + OBJECT_DESC);
+                return null;
+            }
+            final int open = scopes.size();
+            if (expr.depth < open) {
+                final Scope scope = scopes.get(open - 1 - expr.depth);
+                if (!inEnvironment(scope, expr.slot)) {
+                    code.op(DUP);
+                    code.astore(scope.firstLocal + expr.slot);
+                    return null;
+                }
+            }
+            environmentAt(expr.depth);
+            code.iconst(expr.slot);
+            code.invoke(INVOKESTATIC, RUNTIME, "assignAt", "(" + OBJECT_DESC + ENVIRONMENT_DESC + "II)" + OBJECT_DESC);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            compile(expr.object);
+            compile(expr.value);
+            constant(expr.name, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, "setProperty", BINARY_DESC);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            compile(expr.left);
+            compile(expr.right);
+            final String helper = switch (expr.operator.getType()) {
+                case PLUS -> "add";
+                case MINUS -> "subtract";
+                case STAR -> "multiply";
+                case SLASH -> "divide";
+                case GREATER -> "greater";
+                case GREATER_EQUAL -> "greaterEqual";
+                case LESS -> "less";
+                case LESS_EQUAL -> "lessEqual";
+                case EQUAL_EQUAL -> {
+                    code.invoke(INVOKESTATIC, RUNTIME, "equal", "(" + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC);
+                    yield null;
+                }
+                case BANG_EQUAL -> {
+                    code.invoke(INVOKESTATIC, RUNTIME, "notEqual", "(" + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC);
+                    yield null;
+                }
+                default -> {
+                    code.op(POP);
+                    code.op(POP);
+                    code.op(ACONST_NULL);
+                    yield null;
+                }
+            };
+            if (helper != null) {
+                constant(expr.operator, TOKEN);
+                code.invoke(INVOKESTATIC, RUNTIME, helper, BINARY_DESC);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            compile(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            if (expr.value == null) {
+                code.op(ACONST_NULL);
+            } else if (expr.value instanceof Boolean value) {
+                code.field(GETSTATIC, "java/lang/Boolean", value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+            } else if (expr.value instanceof String value) {
+                code.ldc(value);
+            } else {
+                constant(expr.value, OBJECT);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            compile(expr.right);
+            switch (expr.operator.getType()) {
+                case MINUS -> {
+                    constant(expr.operator, TOKEN);
+                    code.invoke(INVOKESTATIC, RUNTIME, "negate", "(" + OBJECT_DESC + TOKEN_DESC + ")" + OBJECT_DESC);
+                }
+                case BANG -> code.invoke(INVOKESTATIC, RUNTIME, "not", "(" + OBJECT_DESC + ")" + OBJECT_DESC);
+                default -> {
+                    code.op(POP);
+                    code.op(ACONST_NULL);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitTernaryExpr(Expr.Ternary expr) {
+            final Label otherwise = code.newLabel();
+            final Label end = code.newLabel();
+            compile(expr.condition);
+            isTruthy();
+            code.jump(IFEQ, otherwise);
+            compile(expr.left);
+            code.jump(GOTO, end);
+            code.mark(otherwise);
+            compile(expr.right);
+            code.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            load(expr.name, expr.local, expr.depth, expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            load(expr.keyword, expr.local, expr.depth, expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr) {
+            // `this` sits in slot 0 of the method frame, right inside the scope holding `super`
+            load(expr.keyword, true, expr.depth - 1, 0);
+            environmentAt(expr.depth);
+            constant(expr.method, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, "getSuper", "(" + OBJECT_DESC + ENVIRONMENT_DESC + "I" + TOKEN_DESC + ")" + OBJECT_DESC);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            final Label end = code.newLabel();
+            compile(expr.left);
+            code.op(DUP);
+            isTruthy();
+            code.jump(expr.operator.getType() == Token.TokenType.AND ? IFEQ : IFNE, end);
+            code.op(POP);
+            compile(expr.right);
+            code.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            if (expr.callee instanceof Expr.Get get) {
+                compile(get.object);
+                code.op(DUP);
+                constant(get.name, TOKEN);
+                code.invoke(INVOKESTATIC, RUNTIME, "findMethod", "(" + OBJECT_DESC + TOKEN_DESC + ")" + OBJECT_DESC);
+                arguments(expr);
+                constant(get.name, TOKEN);
+                constant(expr.paren, TOKEN);
+                code.aload(RUNNER);
+                // A call in tail position comes back as a TailCall, for the LoxFunction running this code to loop on
+                code.invoke(INVOKESTATIC, RUNTIME, expr.tail ? "invokeMethodInTail" : "invokeMethod", "(" + OBJECT_DESC
+                        + OBJECT_DESC + "[" + OBJECT_DESC + TOKEN_DESC + TOKEN_DESC + "L" + INTERPRETER + ";)" + OBJECT_DESC);
+                return null;
+            }
+            compile(expr.callee);
+            arguments(expr);
+            constant(expr.paren, TOKEN);
+            code.aload(RUNNER);
+            code.invoke(INVOKESTATIC, RUNTIME, expr.tail ? "callInTail" : "call", "(" + OBJECT_DESC + "[" + OBJECT_DESC
+                    + TOKEN_DESC + "L" + INTERPRETER + ";)" + OBJECT_DESC);
+            return null;
+        }
+
+        private void arguments(Expr.Call expr) {
+            code.iconst(expr.args.size());
+            code.type(ANEWARRAY, OBJECT);
+            for (int i = 0; i < expr.args.size(); i++) {
+                code.op(DUP);
+                code.iconst(i);
+                compile(expr.args.get(i));
+                code.op(AASTORE);
+            }
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            compile(expr.object);
+            constant(expr.name, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, "getProperty", "(" + OBJECT_DESC + TOKEN_DESC + ")" + OBJECT_DESC);
+            return null;
+        }
+    }
+}
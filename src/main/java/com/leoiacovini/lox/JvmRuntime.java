@@ -0,0 +1,194 @@
+package com.leoiacovini.lox;
+
+import java.util.Arrays;
+
+/// Static helpers called by the bytecode of the JvmCompiler. They keep the generated code short and carry the exact
+/// semantics and error messages of the tree-walking Interpreter; being small static methods the JIT inlines them.
+final class JvmRuntime {
+
+    private JvmRuntime() {
+    }
+
+    private static double number(Object operand, Token operator) {
+        if (!(operand instanceof Double)) throw new Interpreter.RuntimeError(operator, "Operand must be a number");
+        return (double) operand;
+    }
+
+    static Object add(Object left, Object right, Token operator) {
+        if (left instanceof Double a && right instanceof Double b) return a + b;
+        if (Rope.isString(left) && Rope.isString(right)) return Rope.concat(left, right);
+        throw new Interpreter.RuntimeError(operator, "Operands must be two numbers or two strings.");
+    }
+
+    static Object subtract(Object left, Object right, Token operator) {
+        return number(left, operator) - number(right, operator);
+    }
+
+    static Object multiply(Object left, Object right, Token operator) {
+        return number(left, operator) * number(right, operator);
+    }
+
+    static Object divide(Object left, Object right, Token operator) {
+        return number(left, operator) / number(right, operator);
+    }
+
+    static Object greater(Object left, Object right, Token operator) {
+        return number(left, operator) > number(right, operator);
+    }
+
+    static Object greaterEqual(Object left, Object right, Token operator) {
+        return number(left, operator) >= number(right, operator);
+    }
+
+    static Object less(Object left, Object right, Token operator) {
+        return number(left, operator) < number(right, operator);
+    }
+
+    static Object lessEqual(Object left, Object right, Token operator) {
+        return number(left, operator) <= number(right, operator);
+    }
+
+    static Object equal(Object left, Object right) {
+        return Interpreter.isEqual(left, right);
+    }
+
+    static Object notEqual(Object left, Object right) {
+        return !Interpreter.isEqual(left, right);
+    }
+
+    static Object negate(Object operand, Token operator) {
+        return -number(operand, operator);
+    }
+
+    static Object not(Object operand) {
+        return !Interpreter.isTruthy(operand);
+    }
+
+    static void statement() {
+        RuntimeStats.statements.increment();
+    }
+
+    static void print(Object value) {
+        System.out.println(Interpreter.stringify(value));
+    }
+
+    static Object assignAt(Object value, Environment environment, int depth, int slot) {
+        environment.assignAt(depth, slot, value);
+        return value;
+    }
+
+    static Object assignGlobal(Object value, Environment globals, Token name) {
+        globals.assign(name, value);
+        return value;
+    }
+
+    /// A function declared by compiled code, `code` is null when its body was left to the tree-walker
+    static Object function(JvmCode code, Stmt.Function declaration, Environment closure) {
+        return function(code, declaration, closure, false);
+    }
+
+    private static LoxFunction function(JvmCode code, Stmt.Function declaration, Environment closure, boolean isInitializer) {
+        if (code == null) return new LoxFunction(declaration, closure, isInitializer);
+        return new JvmCompiler.CompiledFunction(declaration, code, closure, isInitializer, null);
+    }
+
+    /// A class declared by compiled code, with the same checks and `super` scope as the Interpreter's
+    static Object klass(Object superClass, Environment environment, Stmt.Class declaration, JvmCode[] methods) {
+        Environment classEnv = environment;
+        if (declaration.superClass != null) {
+            if (!(superClass instanceof LoxClass)) {
+                throw new Interpreter.RuntimeError(declaration.superClass.name, "Superclass must be a class.");
+            }
+            classEnv = environment.newChild(1);
+            classEnv.append(superClass);
+        }
+        final LoxFunction[] fns = new LoxFunction[methods.length];
+        for (int i = 0; i < fns.length; i++) {
+            final Stmt.Function method = declaration.methods.get(i);
+            fns[i] = function(methods[i], method, classEnv, method.name.getLexeme().equals("init"));
+        }
+        return new LoxClass(declaration.name.getLexeme(), (LoxClass) superClass, Arrays.asList(fns));
+    }
+
+    static Object call(Object callee, Object[] args, Token paren, Interpreter interpreter) {
+        final LoxCallable calleeFn = callable(callee, args, paren);
+        if (Profiler.active) Profiler.callLine = paren.getLine();
+        try {
+            return calleeFn.call(Arrays.asList(args), interpreter);
+        } catch (StackOverflowError error) {
+            throw Interpreter.stackOverflow(paren);
+        }
+    }
+
+    /// `call` in tail position: a Lox function isn't run here but returned as a TailCall to the caller's loop
+    static Object callInTail(Object callee, Object[] args, Token paren, Interpreter interpreter) {
+        final LoxCallable calleeFn = callable(callee, args, paren);
+        if (calleeFn instanceof LoxFunction function && function.isTailCallable()) {
+            return function.tailCall(Arrays.asList(args));
+        }
+        if (Profiler.active) Profiler.callLine = paren.getLine();
+        try {
+            return calleeFn.call(Arrays.asList(args), interpreter);
+        } catch (StackOverflowError error) {
+            throw Interpreter.stackOverflow(paren);
+        }
+    }
+
+    private static LoxCallable callable(Object callee, Object[] args, Token paren) {
+        if (!(callee instanceof final LoxCallable calleeFn)) {
+            throw new Interpreter.RuntimeError(paren, "Can only call functions and classes.");
+        }
+        if (calleeFn.arity() != args.length) {
+            throw new Interpreter.RuntimeError(paren, "Expected " + calleeFn.arity() + " arguments but got " + args.length + ".");
+        }
+        return calleeFn;
+    }
+
+    /// First half of `instance.method(args)`: the method to invoke, or null when a field shadows it
+    static Object findMethod(Object object, Token name) {
+        return ((LoxInstance) object).findMethod(name);
+    }
+
+    /// Second half of `instance.method(args)`, run once the arguments are evaluated. A shadowing field is only read now.
+    static Object invokeMethod(Object object, Object method, Object[] args, Token name, Token paren, Interpreter interpreter) {
+        if (method == null) return call(getProperty(object, name), args, paren, interpreter);
+        final LoxFunction function = (LoxFunction) callable(method, args, paren);
+        if (Profiler.active) Profiler.callLine = paren.getLine();
+        try {
+            return function.callWith((LoxInstance) object, Arrays.asList(args), interpreter);
+        } catch (StackOverflowError error) {
+            throw Interpreter.stackOverflow(paren);
+        }
+    }
+
+    /// `invokeMethod` in tail position, the method comes back as a TailCall unless it's an initializer
+    static Object invokeMethodInTail(Object object, Object method, Object[] args, Token name, Token paren, Interpreter interpreter) {
+        if (method == null) return callInTail(getProperty(object, name), args, paren, interpreter);
+        final LoxFunction function = (LoxFunction) callable(method, args, paren);
+        if (function.isTailCallable()) return new LoxFunction.TailCall(function, (LoxInstance) object, Arrays.asList(args));
+        if (Profiler.active) Profiler.callLine = paren.getLine();
+        try {
+            return function.callWith((LoxInstance) object, Arrays.asList(args), interpreter);
+        } catch (StackOverflowError error) {
+            throw Interpreter.stackOverflow(paren);
+        }
+    }
+
+    static Object getProperty(Object object, Token name) {
+        return ((LoxInstance) object).get(name);
+    }
+
+    static Object setProperty(Object object, Object value, Token name) {
+        ((LoxInstance) object).set(name, value);
+        return null;
+    }
+
+    static Object getSuper(Object instance, Environment environment, int distance, Token method) {
+        final LoxClass superClass = (LoxClass) environment.getAt(distance, 0);
+        final LoxFunction superMethod = superClass.getMethod(method.getSymbol());
+        if (superMethod == null) {
+            throw new Interpreter.RuntimeError(method, "Method `" + method.getLexeme() + "` not found.");
+        }
+        return superMethod.bind((LoxInstance) instance);
+    }
+}
@@ -0,0 +1,201 @@
+package com.leoiacovini.lox;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/// What a `while` loop can change while it runs, collected over its condition and body, nested functions included.
+/// Names are compared by their lexeme only, which can mistake a shadowing declaration for the variable it shadows but
+/// never the other way around.
+class LoopFacts implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private final Set<String> assigned = new HashSet<>();
+    private final Set<String> declared = new HashSet<>();
+    // Any call may run code that reassigns globals and captured locals, or sets fields
+    private boolean calls = false;
+    private boolean sets = false;
+
+    LoopFacts(Stmt.While loop) {
+        scan(loop.condition);
+        scan(loop.body);
+    }
+
+    /// Whether the expression evaluates to the same value on every iteration without changing anything itself
+    boolean isInvariant(Expr expr) {
+        if (expr instanceof Expr.Literal || expr instanceof Expr.This) return true;
+        if (expr instanceof Expr.Grouping grouping) return isInvariant(grouping.expression);
+        if (expr instanceof Expr.Variable variable) return isInvariant(variable);
+        if (expr instanceof Expr.Unary unary) return isInvariant(unary.right);
+        if (expr instanceof Expr.Binary binary) return isInvariant(binary.left) && isInvariant(binary.right);
+        if (expr instanceof Expr.Logical logical) return isInvariant(logical.left) && isInvariant(logical.right);
+        if (expr instanceof Expr.Ternary ternary) {
+            return isInvariant(ternary.condition) && isInvariant(ternary.left) && isInvariant(ternary.right);
+        }
+        if (expr instanceof Expr.Get get) return !calls && !sets && isInvariant(get.object);
+        return false;
+    }
+
+    private boolean isInvariant(Expr.Variable variable) {
+        final String name = variable.name.getLexeme();
+        if (declared.contains(name) || assigned.contains(name)) return false;
+        // A local `var` nobody ever assigns can't be changed by a call either
+        final boolean neverReassigned = variable.declaration != null && !variable.declaration.reassigned;
+        return neverReassigned || !calls;
+    }
+
+    private void scan(Expr expr) {
+        if (expr != null) expr.accept(this);
+    }
+
+    private void scan(Stmt stmt) {
+        if (stmt != null) stmt.accept(this);
+    }
+
+    private void scan(List<? extends Stmt> statements) {
+        statements.forEach(this::scan);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        assigned.add(expr.name.getLexeme());
+        scan(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        scan(expr.left);
+        scan(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        scan(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        scan(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        scan(expr.condition);
+        scan(expr.left);
+        scan(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        scan(expr.left);
+        scan(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        calls = true;
+        scan(expr.callee);
+        expr.args.forEach(this::scan);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        scan(expr.object);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        sets = true;
+        scan(expr.object);
+        scan(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        scan(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        declared.add(stmt.name.getLexeme());
+        scan(stmt.methods);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        scan(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        scan(stmt.condition);
+        scan(stmt.thenBranch);
+        scan(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        declared.add(stmt.name.getLexeme());
+        stmt.params.forEach(param -> declared.add(param.getLexeme()));
+        scan(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        scan(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        scan(stmt.condition);
+        scan(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        scan(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        declared.add(stmt.name.getLexeme());
+        scan(stmt.initializer);
+        return null;
+    }
+}
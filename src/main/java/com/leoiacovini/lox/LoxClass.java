@@ -7,29 +7,29 @@ import java.util.Map;
 public class LoxClass implements LoxCallable {
 
     final String name;
-    final private Map<String, LoxFunction> methods;
+    // Flattened at creation: own methods plus every inherited one they don't override
+    final private Map<Symbol, LoxFunction> methods;
     final private LoxClass superClass;
+    final private LoxFunction init;
 
     LoxClass(String name, LoxClass superClass, List<LoxFunction> methods) {
+        if (RuntimeStats.active) RuntimeStats.classes.increment();
         this.name = name;
         this.superClass = superClass;
-        final HashMap<String, LoxFunction> indexedMethods = new HashMap<>();
-        methods.forEach(m -> {
-//            final LoxFunction boundMethod = m.bindSuper(superClass);
-            indexedMethods.put(m.name(), m);
-        });
+        final HashMap<Symbol, LoxFunction> indexedMethods = superClass != null
+                ? new HashMap<>(superClass.methods)
+                : new HashMap<>();
+        methods.forEach(m -> indexedMethods.put(m.declaration.name.getSymbol(), m));
         this.methods = indexedMethods;
+        this.init = indexedMethods.get(Symbol.INIT);
     }
 
-    public LoxFunction getMethod(String methodName) {
-        final LoxFunction localMethod = methods.get(methodName);
-        if (localMethod != null) return localMethod;
-        if (superClass != null) return superClass.getMethod(methodName);
-        return null;
+    LoxFunction getMethod(Symbol methodName) {
+        return methods.get(methodName);
     }
 
     private LoxFunction getInit() {
-        return getMethod("init");
+        return init;
     }
 
     @Override
@@ -39,10 +39,23 @@ public class LoxClass implements LoxCallable {
 
     @Override
     public Object call(List<Object> args, Interpreter interpreter) {
+        if (!FlightEvents.recording()) return instantiate(args, interpreter);
+        final var event = new FlightEvents.Instantiation();
+        event.begin();
+        final LoxInstance instance = instantiate(args, interpreter);
+        event.end();
+        if (event.shouldCommit()) {
+            event.className = name;
+            event.commit();
+        }
+        return instance;
+    }
+
+    private LoxInstance instantiate(List<Object> args, Interpreter interpreter) {
         final LoxInstance instance = new LoxInstance(this);
         final LoxFunction init = getInit();
         if (init != null) {
-            init.bind(instance).call(args, interpreter);
+            init.callWith(instance, args, interpreter);
         }
         return instance;
     }
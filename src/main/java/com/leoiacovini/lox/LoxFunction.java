@@ -4,46 +4,105 @@ import java.util.List;
 
 public class LoxFunction implements LoxCallable {
 
+    /// Completion of a `return` whose value is a call to another Lox function. The LoxFunction that was running runs
+    /// the callee in its own loop, so a chain of tail calls takes no more Java stack than a single call.
+    record TailCall(LoxFunction function, LoxInstance receiver, List<Object> args) {
+    }
+
     public LoxFunction(Stmt.Function declaration, Environment closureEnv, boolean isInitializer) {
+        this(declaration, closureEnv, isInitializer, null);
+    }
+
+    protected LoxFunction(Stmt.Function declaration, Environment closureEnv, boolean isInitializer, LoxInstance receiver) {
         this.declaration = declaration;
         this.closureEnv = closureEnv;
         this.isInitializer = isInitializer;
+        this.receiver = receiver;
     }
 
-    private final Stmt.Function declaration;
-    private final Environment closureEnv;
-    private final boolean isInitializer;
+    protected final Stmt.Function declaration;
+    protected final Environment closureEnv;
+    protected final boolean isInitializer;
+    // Only set on bound methods, whose value escaped as `instance.method` without being called right away
+    protected final LoxInstance receiver;
 
     public LoxFunction bind(LoxInstance instance) {
-        final Environment environment = new Environment(closureEnv);
-        environment.define("this", instance);
-        return new LoxFunction(this.declaration, environment, this.isInitializer);
+        return withReceiver(instance);
     }
 
-    private Object getThis() {
-        return closureEnv.getAt(0, "this");
+    /// Same function bound to another receiver, engines with their own function representation override it
+    protected LoxFunction withReceiver(LoxInstance instance) {
+        return new LoxFunction(this.declaration, this.closureEnv, this.isInitializer, instance);
     }
 
     @Override
     public Object call(List<Object> args, Interpreter interpreter) {
-        final var env = new Environment(closureEnv);
-        // Prepare environment biding provided arguments to their respective variable name
-        defineEnvArguments(args, env);
+        return callWith(receiver, args, interpreter);
+    }
+
+    /// Calls the function with `receiver` as `this`, when it's a method. Method calls go straight through here so no
+    /// bound method is ever allocated for them. The profiler and the flight recorder are only touched when they're on,
+    /// a plain call costs this frame and execute's only.
+    public Object callWith(LoxInstance receiver, List<Object> args, Interpreter interpreter) {
+        if (RuntimeStats.active) RuntimeStats.calls.increment();
+        final FlightEvents.FunctionCall event = FlightEvents.recording() ? begin() : null;
+        final boolean profiled = Profiler.active;
+        if (profiled) Profiler.enter(this);
+        Object result;
         try {
-            interpreter.interpretBlock(declaration.body, env);
-        } catch (Interpreter.Return returnValue) {
-            if (isInitializer) return getThis();
-            return returnValue.getValue();
+            result = execute(receiver, args, interpreter);
+            while (result instanceof TailCall call) {
+                if (profiled) Profiler.replace(call.function());
+                if (RuntimeStats.active) RuntimeStats.calls.increment();
+                result = call.function().execute(call.receiver(), call.args(), interpreter);
+            }
+        } finally {
+            if (profiled) Profiler.exit();
         }
-        if (isInitializer) return getThis();
-        return null;
+        if (event != null) commit(event);
+        return isInitializer ? receiver : result;
+    }
+
+    private static FlightEvents.FunctionCall begin() {
+        final var event = new FlightEvents.FunctionCall();
+        event.begin();
+        return event;
+    }
+
+    private void commit(FlightEvents.FunctionCall event) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.function = name();
+            event.line = declaration.name.getLine();
+            event.commit();
+        }
+    }
+
+    /// Runs the body once, returning either its value or the TailCall it ended with
+    protected Object execute(LoxInstance receiver, List<Object> args, Interpreter interpreter) {
+        final var env = new Environment(closureEnv, declaration.scopeSize);
+        // Prepare environment biding provided arguments to their respective variable name
+        defineEnvArguments(receiver, args, env);
+        final Object completion = interpreter.interpretBlock(declaration.body, env);
+        return completion == Interpreter.NORMAL ? null : completion;
+    }
+
+    /// Whether a tail call to this function can be left to the caller's loop. Initializers return their receiver
+    /// whatever their body does.
+    boolean isTailCallable() {
+        return !isInitializer;
+    }
+
+    /// Tail call to the function with the receiver it was bound to, if any
+    TailCall tailCall(List<Object> args) {
+        return new TailCall(this, receiver, args);
     }
 
-    private void defineEnvArguments(List<Object> args, Environment env) {
+    /// Slots follow the Resolver's order: `this` first for a method, then the parameters
+    protected void defineEnvArguments(LoxInstance receiver, List<Object> args, Environment env) {
+        if (receiver != null) env.append(receiver);
         for (var i = 0; i < declaration.params.size(); i++) {
-            final var varName = declaration.params.get(i).getLexeme();
-            final var varValue = args.get(i);
-            env.define(varName, varValue);
+            env.append(args.get(i));
         }
     }
 
@@ -1,21 +1,26 @@
 package com.leoiacovini.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class LoxInstance {
 
+    private static final Object[] NO_FIELDS = new Object[0];
+
     final LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    // Field names live in the shared Shape, the instance only keeps the values
+    private Shape shape = Shape.EMPTY;
+    private Object[] fields = NO_FIELDS;
 
     public LoxInstance(LoxClass klass) {
+        if (RuntimeStats.active) RuntimeStats.instances.increment();
         this.klass = klass;
     }
 
     public Object get(Token property) {
-        final String propertyName = property.getLexeme();
-        if (fields.containsKey(propertyName)) {
-            return fields.get(propertyName);
+        final Symbol propertyName = property.getSymbol();
+        final int slot = shape.slotOf(propertyName);
+        if (slot >= 0) {
+            return fields[slot];
         }
         final LoxFunction klassMethod = klass.getMethod(propertyName);
         if (klassMethod != null) {
@@ -24,9 +29,31 @@ public class LoxInstance {
         throw new Interpreter.RuntimeError(property, "Undefined property '" + propertyName + "'.");
     }
 
+    /// The class method `property` names, or null when a field shadows it, so a call site can invoke the method with
+    /// this instance as its receiver instead of going through a bound copy
+    LoxFunction findMethod(Token property) {
+        final Symbol propertyName = property.getSymbol();
+        if (shape.slotOf(propertyName) >= 0) return null;
+        final LoxFunction klassMethod = klass.getMethod(propertyName);
+        if (klassMethod == null) {
+            throw new Interpreter.RuntimeError(property, "Undefined property '" + propertyName + "'.");
+        }
+        return klassMethod;
+    }
+
     public void set(Token property, Object value) {
-        final String propertyName = property.getLexeme();
-        fields.put(propertyName, value);
+        final Symbol propertyName = property.getSymbol();
+        int slot = shape.slotOf(propertyName);
+        if (slot < 0) {
+            shape = shape.withField(propertyName);
+            slot = shape.size() - 1;
+            if (slot == fields.length) fields = Arrays.copyOf(fields, Math.max(4, fields.length * 2));
+        }
+        fields[slot] = value;
+    }
+
+    Shape getShape() {
+        return shape;
     }
 
     @Override
@@ -0,0 +1,29 @@
+package com.leoiacovini.lox;
+
+/// Boxing of Lox numbers. Small integral values, the ones loop counters and indexes go through, come from a shared
+/// cache like `Integer.valueOf` does, so the hot path of counting loops doesn't allocate. -0.0 is never cached, it
+/// has to stay distinguishable from 0.0.
+final class LoxNumber {
+
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final Double[] CACHE = new Double[CACHE_HIGH - CACHE_LOW];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = (double) (i + CACHE_LOW);
+        }
+    }
+
+    private LoxNumber() {
+    }
+
+    static Object box(double value) {
+        final int integral = (int) value;
+        if (integral == value && integral >= CACHE_LOW && integral < CACHE_HIGH
+                && (integral != 0 || Double.doubleToRawLongBits(value) == 0L)) {
+            return CACHE[integral - CACHE_LOW];
+        }
+        return value;
+    }
+}
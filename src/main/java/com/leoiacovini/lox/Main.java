@@ -1,29 +1,66 @@
 package com.leoiacovini.lox;
 
+import com.leoiacovini.lox.vm.VM;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
 public class Main {
 
-    private static final Interpreter interpreter = new Interpreter();
+    private static Engine engine;
+    private static int maxDepth = VM.DEFAULT_MAX_FRAMES;
+    private static boolean dumpAst = false;
 
-    private static void run(String sourceCode) {
-        final var scanner = new Scanner(sourceCode);
-        final var parser = new Parser(scanner.scanTokens());
+    static void run(Scanner scanner, Engine engine) {
+        // The parser pulls tokens from the scanner as it needs them, scanning is timed as part of parsing
+        var phase = Phase.begin("parse");
+        final var parser = new Parser(scanner.tokens());
         final var statements = parser.parse();
+        phase.end();
         if (Reporter.hadError || statements.isEmpty()) return;
 
-        final var resolver = new Resolver(interpreter);
-
+        phase = Phase.begin("resolve");
+        final var resolver = new Resolver();
         resolver.resolve(statements);
+        phase.end();
+
+        if (Reporter.hadError) return;
+
+        phase = Phase.begin("optimize");
+        final var optimized = new Optimizer().optimize(statements);
+        // Slots and scopes are laid out again for the rewritten tree
+        new Resolver().resolve(optimized);
+        phase.end();
 
         if (Reporter.hadError) return;
+        if (dumpAst) System.err.println(new AstPrinter().print(optimized));
 
-        interpreter.interpret(statements);
+        phase = Phase.begin("interpret");
+        engine.interpret(optimized);
+        phase.end();
+    }
+
+    /// One step of run, reported to the flight recorder and `--jmx` when either is on
+    private record Phase(String name, long start, FlightEvents.Phase event) {
+        static Phase begin(String name) {
+            FlightEvents.Phase event = null;
+            if (FlightEvents.recording()) {
+                event = new FlightEvents.Phase();
+                event.phase = name;
+                event.begin();
+            }
+            return new Phase(name, System.nanoTime(), event);
+        }
+
+        void end() {
+            if (event != null) event.commit();
+            if (RuntimeStats.active) RuntimeStats.phase(name, System.nanoTime() - start);
+        }
     }
 
     private static void runPrompt() throws IOException {
@@ -33,15 +70,16 @@ public class Main {
             System.out.print(">> ");
             final var line = reader.readLine();
             if (line == null) break;
-            run(line);
+            run(new Scanner(line), engine);
             Reporter.hadError = false;
         }
     }
 
     private static void runFile(String filePath) throws IOException {
-        final var bytes = Files.readAllBytes(Paths.get(filePath));
-        final var sourceStr = new String(bytes, StandardCharsets.UTF_8);
-        run(sourceStr);
+        // Streamed, only the scanner's buffer of the file is in memory at once
+        try (Reader source = new InputStreamReader(Files.newInputStream(Paths.get(filePath)), StandardCharsets.UTF_8)) {
+            run(new Scanner(source), engine);
+        }
         if (Reporter.hadError) {
             System.exit(65);
         } else if (Reporter.hadRuntimeError) {
@@ -49,12 +87,71 @@ public class Main {
         }
     }
 
+    private static void usage() {
+        System.err.println("Usage: jlox [--engine tree|closure|vm|jvm] [--engine vm --max-depth n] [--dump-ast] [--profile file] [--jmx] [--bench dir | script]");
+        System.exit(64);
+    }
+
+    private static Engine engine(String name) {
+        return switch (name) {
+            case "tree" -> new Interpreter();
+            case "closure" -> new ClosureCompiler();
+            case "vm" -> new BytecodeCompiler(maxDepth);
+            case "jvm" -> new JvmCompiler();
+            default -> {
+                usage();
+                yield null;
+            }
+        };
+    }
+
+    private static int maxDepth(String value) {
+        try {
+            final int depth = Integer.parseInt(value);
+            if (depth > 0) return depth;
+        } catch (NumberFormatException ignored) {
+            // Reported as a usage error below
+        }
+        usage();
+        return 0;
+    }
+
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.err.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        String script = null;
+        String engineName = "tree";
+        String profile = null;
+        String bench = null;
+        boolean depthGiven = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--engine") && i + 1 < args.length) {
+                engineName = args[++i];
+            } else if (args[i].equals("--max-depth") && i + 1 < args.length) {
+                maxDepth = maxDepth(args[++i]);
+                depthGiven = true;
+            } else if (args[i].equals("--profile") && i + 1 < args.length) {
+                profile = args[++i];
+            } else if (args[i].equals("--bench") && i + 1 < args.length) {
+                bench = args[++i];
+            } else if (args[i].equals("--jmx")) {
+                RuntimeStats.start();
+            } else if (args[i].equals("--dump-ast")) {
+                dumpAst = true;
+            } else if (args[i].startsWith("--") || script != null) {
+                usage();
+            } else {
+                script = args[i];
+            }
+        }
+        // Only the vm keeps its frames on the heap, the other engines recurse on the Java stack and can't be bounded
+        if (depthGiven && !engineName.equals("vm")) usage();
+        engine = engine(engineName);
+        if (profile != null) Profiler.start(Paths.get(profile));
+        if (bench != null) {
+            if (script != null) usage();
+            final String name = engineName;
+            if (!Bench.run(Paths.get(bench), name, () -> engine(name))) System.exit(70);
+        } else if (script != null) {
+            runFile(script);
         } else {
             runPrompt();
         }
@@ -0,0 +1,295 @@
+package com.leoiacovini.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Rewrites a resolved program before any engine sees it, folding operations on literals into a single literal and
+/// propagating locals that are initialized with a constant and never reassigned. Every engine shares the result.
+///
+/// Globals are left alone, the REPL may reassign them on a later line. Operations that would fail at runtime, like
+/// adding a number to a string, are kept as they are so they still report their error.
+///
+/// Statements that can never run are dropped, and invariant parts of a loop condition are computed once in front of
+/// the loop. The rewritten tree has scopes the resolver never saw, so it has to be resolved again before running it.
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    // Folded initializers of the locals that can be propagated, keyed by the declaration the resolver linked reads to
+    private final Map<Stmt.Var, Expr.Literal> constants = new HashMap<>();
+
+    // Set while optimizing a loop condition, whose invariant parts become `var`s declared right before the loop
+    private LoopFacts loop = null;
+    private List<Stmt> invariants = null;
+    // Once the condition may fail or change something, moving what comes after it ahead would reorder the two
+    private boolean blocked = false;
+    private int temporaries = 0;
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        final List<Stmt> optimized = new ArrayList<>(statements.size());
+        for (final Stmt statement : statements) {
+            final Stmt stmt = optimize(statement);
+            if (stmt != null) optimized.add(stmt);
+            if (stmt instanceof Stmt.Return) break;
+        }
+        return optimized;
+    }
+
+    private Expr optimize(Expr expr) {
+        if (expr == null) return null;
+        if (loop == null) return expr.accept(this);
+        if (!blocked && isWorthHoisting(expr) && loop.isInvariant(expr)) return hoist(expr);
+        final Expr optimized = expr.accept(this);
+        if (!isQuiet(optimized)) blocked = true;
+        return optimized;
+    }
+
+    /// Variables and literals are as cheap to read in the loop as a hoisted copy would be
+    private static boolean isWorthHoisting(Expr expr) {
+        if (expr instanceof Expr.Grouping grouping) return isWorthHoisting(grouping.expression);
+        return expr instanceof Expr.Binary || expr instanceof Expr.Unary || expr instanceof Expr.Logical
+                || expr instanceof Expr.Ternary || expr instanceof Expr.Get;
+    }
+
+    /// Whether evaluating the node itself, its operands aside, can neither fail nor change anything
+    private static boolean isQuiet(Expr expr) {
+        if (expr instanceof Expr.Literal || expr instanceof Expr.Grouping || expr instanceof Expr.This) return true;
+        if (expr instanceof Expr.Logical || expr instanceof Expr.Ternary) return true;
+        if (expr instanceof Expr.Variable variable) return variable.local;
+        if (expr instanceof Expr.Unary unary) return unary.operator.getType() == Token.TokenType.BANG;
+        if (expr instanceof Expr.Binary binary) {
+            return binary.operator.getType() == Token.TokenType.EQUAL_EQUAL
+                    || binary.operator.getType() == Token.TokenType.BANG_EQUAL;
+        }
+        return false;
+    }
+
+    private Expr hoist(Expr expr) {
+        final LoopFacts facts = loop;
+        loop = null;
+        final Expr value = expr.accept(this);
+        loop = facts;
+        if (value instanceof Expr.Literal) return value;
+        // Not a name the scanner could ever produce, so it can't clash with one from the program
+        final Token name = new Token("invariant#" + temporaries++, null, 0, Token.TokenType.IDENTIFIER);
+        invariants.add(new Stmt.Var(name, value));
+        return new Expr.Variable(name);
+    }
+
+    /// A removed branch or loop body still needs a statement in its place
+    private static Stmt orEmpty(Stmt stmt) {
+        return stmt != null ? stmt : new Stmt.Block(List.of());
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt == null ? null : stmt.accept(this);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        final Expr.Assign assign = new Expr.Assign(expr.name, optimize(expr.value));
+        assign.local = expr.local;
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+        return assign;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        final Expr left = optimize(expr.left);
+        final Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal l && right instanceof Expr.Literal r) {
+            final Object folded = fold(expr.operator, l.value, r.value);
+            if (folded != null) return new Expr.Literal(folded);
+        }
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    /// The value of the operation, or null when it has to be left for runtime
+    private static Object fold(Token operator, Object left, Object right) {
+        switch (operator.getType()) {
+            case EQUAL_EQUAL:
+                return Interpreter.isEqual(left, right);
+            case BANG_EQUAL:
+                return !Interpreter.isEqual(left, right);
+            case PLUS:
+                if (left instanceof String l && right instanceof String r) return l + r;
+                break;
+            default:
+                break;
+        }
+        if (!(left instanceof Double l) || !(right instanceof Double r)) return null;
+        return switch (operator.getType()) {
+            case PLUS -> l + r;
+            case MINUS -> l - r;
+            case STAR -> l * r;
+            case SLASH -> l / r;
+            case GREATER -> l > r;
+            case GREATER_EQUAL -> l >= r;
+            case LESS -> l < r;
+            case LESS_EQUAL -> l <= r;
+            default -> null;
+        };
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        final Expr expression = optimize(expr.expression);
+        if (expression instanceof Expr.Literal) return expression;
+        return new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        final Expr right = optimize(expr.right);
+        if (right instanceof Expr.Literal literal) {
+            if (expr.operator.getType() == Token.TokenType.BANG) return new Expr.Literal(!Interpreter.isTruthy(literal.value));
+            if (literal.value instanceof Double value) return new Expr.Literal(-value);
+        }
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+        final Expr condition = optimize(expr.condition);
+        // Only one of the branches runs, neither can be moved ahead of the condition
+        blocked = true;
+        final Expr left = optimize(expr.left);
+        final Expr right = optimize(expr.right);
+        if (condition instanceof Expr.Literal literal) return Interpreter.isTruthy(literal.value) ? left : right;
+        return new Expr.Ternary(expr.operator, condition, left, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        final Expr.Literal constant = expr.declaration == null ? null : constants.get(expr.declaration);
+        return constant != null ? constant : expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        final Expr left = optimize(expr.left);
+        blocked = true;
+        final Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal literal) {
+            final boolean truthy = Interpreter.isTruthy(literal.value);
+            final boolean shortCircuits = expr.operator.getType() == Token.TokenType.OR ? truthy : !truthy;
+            return shortCircuits ? left : right;
+        }
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        final List<Expr> args = new ArrayList<>(expr.args.size());
+        for (final Expr arg : expr.args) {
+            args.add(optimize(arg));
+        }
+        return new Expr.Call(optimize(expr.callee), expr.paren, args);
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        return new Expr.Get(optimize(expr.object), expr.name);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        return new Expr.Set(optimize(expr.object), expr.name, optimize(expr.value));
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        final Stmt.Block block = new Stmt.Block(optimize(stmt.statements));
+        block.scopeSize = stmt.scopeSize;
+        block.captured = stmt.captured;
+        return block;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        final List<Stmt.Function> methods = new ArrayList<>(stmt.methods.size());
+        for (final Stmt.Function method : stmt.methods) {
+            methods.add((Stmt.Function) optimize(method));
+        }
+        // The superclass stays a variable, it has to be checked to be a class when the declaration runs
+        return new Stmt.Class(stmt.name, stmt.superClass, methods);
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        return new Stmt.Expression(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        final Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal literal) {
+            return optimize(Interpreter.isTruthy(literal.value) ? stmt.thenBranch : stmt.elseBranch);
+        }
+        return new Stmt.If(condition, orEmpty(optimize(stmt.thenBranch)), optimize(stmt.elseBranch));
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        final Stmt.Function function = new Stmt.Function(stmt.name, stmt.params, optimize(stmt.body));
+        function.scopeSize = stmt.scopeSize;
+        function.captured = stmt.captured;
+        return function;
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        loop = new LoopFacts(stmt);
+        invariants = new ArrayList<>();
+        blocked = false;
+        final Expr condition = optimize(stmt.condition);
+        final List<Stmt> hoisted = invariants;
+        loop = null;
+        invariants = null;
+
+        if (condition instanceof Expr.Literal literal && !Interpreter.isTruthy(literal.value)) return null;
+        final Stmt.While optimized = new Stmt.While(condition, orEmpty(optimize(stmt.body)));
+        if (hoisted.isEmpty()) return optimized;
+        hoisted.add(optimized);
+        return new Stmt.Block(hoisted);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        return new Stmt.Return(stmt.keyword, optimize(stmt.value));
+    }
+
+    /// The declaration is kept even when every read was propagated, the slot it fills is still part of the scope
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        final Expr initializer = optimize(stmt.initializer);
+        if (!stmt.reassigned) {
+            if (initializer == null) constants.put(stmt, new Expr.Literal(null));
+            if (initializer instanceof Expr.Literal literal) constants.put(stmt, literal);
+        }
+        final Stmt.Var var = new Stmt.Var(stmt.name, initializer);
+        var.reassigned = stmt.reassigned;
+        return var;
+    }
+}
@@ -1,6 +1,7 @@
 package com.leoiacovini.lox;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import com.leoiacovini.lox.Token.TokenType;
@@ -10,11 +11,19 @@ public class Parser {
     private static class ParseError extends RuntimeException {
     }
 
-    private final List<Token> tokens;
-    private int current = 0;
+    // Tokens are pulled one at a time, only the current one and the one before it are kept
+    private final Iterator<Token> tokens;
+    private Token current;
+    private Token previous = null;
 
     public Parser(List<Token> tokens) {
+        this(tokens.iterator());
+    }
+
+    /// Parses tokens as they come, e.g. straight from `Scanner.tokens()`. The last one has to be EOF.
+    public Parser(Iterator<Token> tokens) {
         this.tokens = tokens;
+        this.current = tokens.next();
     }
 
     public List<Stmt> parse() {
@@ -24,6 +33,7 @@ public class Parser {
                 statements.add(declaration());
             } catch (ParseError error) {
                 synchronize();
+                if (Trace.PARSER) Trace.debug(Trace.Category.PARSER, "recovered from a parse error at {}", peek());
             }
         }
         return statements;
@@ -34,16 +44,19 @@ public class Parser {
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return previous;
     }
 
     private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+        if (!isAtEnd()) {
+            previous = current;
+            current = tokens.next();
+        }
+        return previous;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return current;
     }
 
     private boolean check(TokenType type) {
@@ -0,0 +1,162 @@
+package com.leoiacovini.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/// Sampling profiler for `--profile`. LoxFunction.callWith keeps a shadow stack of the Lox calls in progress, one
+/// function name and call line per frame, and a daemon thread samples it about once a millisecond. When the program
+/// exits the samples are written as a self/total time table on stderr and as collapsed stacks, one
+/// `frame;frame;frame nanos` line per distinct stack, ready for `flamegraph.pl`.
+///
+/// The stack is written by the thread running the program and read without locking by the sampler, a sample may
+/// then see a frame that was just popped. That's an acceptable error for a sampling profiler, and keeps pushing and
+/// popping down to a few plain stores.
+final class Profiler {
+
+    private static final long INTERVAL_MILLIS = 1;
+    private static final String ROOT = "<script>";
+
+    /// Read on every call, only ever set before the program starts
+    static boolean active = false;
+    /// Line of the call about to be made, set by the engines' call sites right before calling a LoxFunction
+    static int callLine = 0;
+
+    private static String[] names = new String[64];
+    private static int[] lines = new int[64];
+    private static int depth = 0;
+
+    // Nanoseconds attributed to each distinct stack, guarded by the class lock
+    private static final Map<String, Long> stacks = new HashMap<>();
+    private static Thread sampler;
+
+    private Profiler() {
+    }
+
+    static void enter(LoxFunction function) {
+        if (depth == names.length) {
+            names = Arrays.copyOf(names, depth * 2);
+            lines = Arrays.copyOf(lines, depth * 2);
+        }
+        names[depth] = function.name();
+        lines[depth] = callLine;
+        depth++;
+    }
+
+    /// A tail call takes over the frame of the function it returns from
+    static void replace(LoxFunction function) {
+        if (depth > 0) names[depth - 1] = function.name();
+    }
+
+    static void exit() {
+        depth--;
+    }
+
+    /// Starts sampling, the report is written when the JVM exits
+    static void start(Path collapsedOutput) {
+        active = true;
+        sampler = new Thread(Profiler::sample, "lox-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> stop(collapsedOutput)));
+    }
+
+    private static void sample() {
+        long last = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            final long now = System.nanoTime();
+            record(snapshot(), now - last);
+            last = now;
+        }
+    }
+
+    private static String snapshot() {
+        final String[] names = Profiler.names;
+        final int[] lines = Profiler.lines;
+        final int depth = Math.min(Profiler.depth, names.length);
+        final StringBuilder stack = new StringBuilder(ROOT);
+        for (int i = 0; i < depth; i++) {
+            if (names[i] == null) break;
+            stack.append(';').append(names[i]).append(':').append(lines[i]);
+        }
+        return stack.toString();
+    }
+
+    static synchronized void record(String stack, long nanos) {
+        stacks.merge(stack, nanos, Long::sum);
+    }
+
+    /// Runs in a shutdown hook, where an exception would only dump a stack trace: a failed write is reported on stderr
+    private static synchronized void stop(Path collapsedOutput) {
+        active = false;
+        sampler.interrupt();
+        writeTable(System.err);
+        try (PrintStream out = new PrintStream(Files.newOutputStream(collapsedOutput), false, StandardCharsets.UTF_8)) {
+            writeCollapsed(out);
+        } catch (IOException e) {
+            System.err.println("Could not write the profile: " + e);
+        }
+    }
+
+    static synchronized void writeCollapsed(PrintStream out) {
+        stacks.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> out.println(entry.getKey() + " " + entry.getValue()));
+    }
+
+    /// Self time goes to the innermost function of each sample, total time to every function on its stack, once even
+    /// when it recurses
+    static synchronized void writeTable(PrintStream out) {
+        final Map<String, long[]> times = new HashMap<>();
+        long all = 0;
+        for (final var entry : stacks.entrySet()) {
+            final long nanos = entry.getValue();
+            all += nanos;
+            final List<String> frames = functions(entry.getKey());
+            final Set<String> seen = new HashSet<>();
+            for (final String frame : frames) {
+                if (seen.add(frame)) times.computeIfAbsent(frame, f -> new long[2])[1] += nanos;
+            }
+            times.get(frames.get(frames.size() - 1))[0] += nanos;
+        }
+        final long total = Math.max(all, 1);
+        out.printf("%-24s %10s %7s %10s %7s%n", "function", "self ms", "self %", "total ms", "total %");
+        times.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
+                .forEach(entry -> {
+                    final long[] time = entry.getValue();
+                    out.printf("%-24s %10.1f %6.1f%% %10.1f %6.1f%%%n", entry.getKey(),
+                            time[0] / 1e6, 100.0 * time[0] / total, time[1] / 1e6, 100.0 * time[1] / total);
+                });
+    }
+
+    /// Function names of a collapsed stack, call lines dropped
+    private static List<String> functions(String stack) {
+        final List<String> functions = new ArrayList<>();
+        for (final String frame : stack.split(";")) {
+            final int colon = frame.lastIndexOf(':');
+            functions.add(colon < 0 ? frame : frame.substring(0, colon));
+        }
+        return functions;
+    }
+
+    /// Forgets every sample, for tests
+    static synchronized void reset() {
+        stacks.clear();
+        depth = 0;
+    }
+}
@@ -25,17 +25,21 @@ public class Reporter {
         hadError = true;
     }
 
-    static void debug(String log) {
-        if (System.getenv().get("DEBUG") != null) {
-            final StackTraceElement st = Thread.currentThread().getStackTrace()[2];
-            final String callerClass = st.getClassName();
-            final long callerLine = st.getLineNumber();
-            System.out.println("[DEBUG " + callerClass + ":" + callerLine + "]: " + log);
-        }
+    public static void runtimeError(Interpreter.RuntimeError error) {
+        runtimeError(error.getMessage(), error.getToken().getLine());
     }
 
-    public static void runtimeError(Interpreter.RuntimeError error) {
-        System.err.println(error.getMessage() + "\n[line " + error.getToken().getLine() + "]");
+    public static void runtimeError(String message, int line) {
+        System.err.println(message + "\n[line " + line + "]");
         hadRuntimeError = true;
+        if (RuntimeStats.active) RuntimeStats.errors.increment();
+        Trace.dump();
+        if (!FlightEvents.recording()) return;
+        final var event = new FlightEvents.RuntimeError();
+        if (event.shouldCommit()) {
+            event.message = message;
+            event.line = line;
+            event.commit();
+        }
     }
 }
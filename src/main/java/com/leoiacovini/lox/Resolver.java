@@ -1,5 +1,6 @@
 package com.leoiacovini.lox;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,19 +15,69 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         DEFINED,
     }
 
-    private final Interpreter interpreter;
-    private final Stack<Map<String, TokenBindingStatus>> scopes = new Stack<>();
+    record Binding(TokenBindingStatus status, int slot) {
+    }
+
+    static class Scope {
+        private final Map<String, Binding> bindings = new HashMap<>();
+        private final Map<Integer, Stmt.Var> declarations = new HashMap<>();
+        private final BitSet captured = new BitSet();
+        private int size = 0;
+
+        Binding get(String name) {
+            return bindings.get(name);
+        }
+
+        boolean containsKey(String name) {
+            return bindings.containsKey(name);
+        }
+
+        /// Every declaration takes a fresh slot, a redeclared name simply points to its newest one
+        void declare(String name) {
+            bindings.put(name, new Binding(TokenBindingStatus.DECLARED, size++));
+        }
+
+        void define(String name) {
+            final Binding binding = bindings.get(name);
+            bindings.put(name, new Binding(TokenBindingStatus.DEFINED, binding.slot()));
+        }
+
+        int size() {
+            return size;
+        }
+
+        /// The `var` statement that declared the name, null for parameters, functions and classes
+        Stmt.Var declaration(String name) {
+            return declarations.get(bindings.get(name).slot());
+        }
+
+        void capture(int slot) {
+            captured.set(slot);
+        }
+
+        /// Which slots are read or written by a function nested inside the one declaring them
+        boolean[] captured() {
+            final boolean[] result = new boolean[size];
+            captured.stream().forEach(slot -> result[slot] = true);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return bindings.toString();
+        }
+    }
+
+    private final Stack<Scope> scopes = new Stack<>();
     private FunctionType currentFunctionType = FunctionType.NONE;
+    // Index of the first scope owned by the function being resolved, anything below it belongs to enclosing code
+    private int currentFunctionScope = 0;
     private ClassType currentClassType = ClassType.NONE;
 
-    public Stack<Map<String, TokenBindingStatus>> getScopes() {
+    public Stack<Scope> getScopes() {
         return scopes;
     }
 
-    public Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
-    }
-
     public void resolve(Expr expr) {
         expr.accept(this);
     }
@@ -42,19 +93,34 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void beginScope() {
-        Reporter.debug("BEGIN SCOPE");
-        scopes.push(new HashMap<>());
+        if (Trace.RESOLVER) Trace.trace(Trace.Category.RESOLVER, "begin scope {}", scopes.size());
+        scopes.push(new Scope());
     }
 
-    private void endScope() {
-        Reporter.debug("END SCOPE");
-        scopes.pop();
+    private Scope endScope() {
+        if (Trace.RESOLVER) Trace.trace(Trace.Category.RESOLVER, "end scope {}", scopes.size() - 1);
+        return scopes.pop();
     }
 
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        final Environment.Slot slot = resolveLocal(expr.name);
+        if (slot != null) {
+            expr.local = true;
+            expr.depth = slot.depth();
+            expr.slot = slot.index();
+            final Stmt.Var declaration = declarationOf(expr.name);
+            if (declaration != null) declaration.reassigned = true;
+        }
+        return null;
+    }
+
+    /// Local `var` declaration a name currently resolves to, lets the Optimizer propagate the ones never reassigned
+    private Stmt.Var declarationOf(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            if (scopes.get(i).containsKey(name.getLexeme())) return scopes.get(i).declaration(name.getLexeme());
+        }
         return null;
     }
 
@@ -97,22 +163,28 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    /// Finds the innermost scope declaring `name`, returns null when it must be a global
+    private Environment.Slot resolveLocal(Token name) {
+        return resolveLocal(name.getLexeme());
+    }
+
+    private Environment.Slot resolveLocal(String name) {
         final int size = scopes.size() - 1;
-        Reporter.debug("Starting resolveLocal for " + name.getLexeme() + " with scopes: " + scopes);
         for (int i = size; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.getLexeme())) {
-                Reporter.debug("resolveLocal: " + name.getLexeme() + " at scope index: " + i);
-                Reporter.debug("Current Scope: " + scopes.get(i));
-                interpreter.resolve(expr, size - i);
-                return;
+            if (scopes.get(i).containsKey(name)) {
+                final int slot = scopes.get(i).get(name).slot();
+                if (Trace.RESOLVER) Trace.trace(Trace.Category.RESOLVER, "`{}` resolved to depth {}, slot {}", name, size - i, slot);
+                if (i < currentFunctionScope) scopes.get(i).capture(slot);
+                return new Environment.Slot(size - i, slot);
             }
         }
+        return null;
     }
 
     private boolean variableIsDeclared(Expr.Variable expr) {
         final String lexeme = expr.name.getLexeme();
-        return !scopes.isEmpty() && scopes.peek().get(lexeme) == TokenBindingStatus.DECLARED;
+        if (scopes.isEmpty() || !scopes.peek().containsKey(lexeme)) return false;
+        return scopes.peek().get(lexeme).status() == TokenBindingStatus.DECLARED;
     }
 
     @Override
@@ -120,7 +192,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (variableIsDeclared(expr)) {
             Reporter.error(expr.name, "Can't read local variable in it's own initializer.");
         }
-        resolveLocal(expr, expr.name);
+        final Environment.Slot slot = resolveLocal(expr.name);
+        if (slot != null) {
+            expr.local = true;
+            expr.depth = slot.depth();
+            expr.slot = slot.index();
+            expr.declaration = declarationOf(expr.name);
+        }
         return null;
     }
 
@@ -129,7 +207,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (currentClassType == ClassType.NONE) {
             Reporter.error(expr.keyword, "Can't call `this` outside of a Class scope.");
         }
-        resolveLocal(expr, expr.keyword);
+        final Environment.Slot slot = resolveLocal(expr.keyword);
+        if (slot != null) {
+            expr.local = true;
+            expr.depth = slot.depth();
+            expr.slot = slot.index();
+        }
         return null;
     }
 
@@ -138,8 +221,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (currentClassType == ClassType.NONE) {
             Reporter.error(expr.keyword, "Can't call `super` outside of a Subclass scope.");
         }
-        resolveLocal(expr, expr.keyword);
-//        resolveLocal(expr, expr.method);
+        final Environment.Slot slot = resolveLocal(expr.keyword);
+        if (slot != null) {
+            expr.depth = slot.depth();
+        }
+        // `super.x` binds to the current `this` as well, which has to be marked captured when read from a nested function
+        resolveLocal("this");
         return null;
     }
 
@@ -167,7 +254,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitBlockStmt(Stmt.Block stmt) {
         beginScope();
         resolve(stmt.statements);
-        endScope();
+        final Scope scope = endScope();
+        stmt.scopeSize = scope.size();
+        stmt.captured = scope.captured();
         return null;
     }
 
@@ -200,11 +289,10 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (stmt.superClass != null) {
             beginScope();
             currentClassType = ClassType.SUB_CLASS;
-            scopes.peek().put("super", TokenBindingStatus.DEFINED);
+            scopes.peek().declare("super");
+            scopes.peek().define("super");
         }
 
-        beginScope();
-        scopes.peek().put("this", TokenBindingStatus.DEFINED);
         for (Stmt.Function method : stmt.methods) {
             if (method.name.getLexeme().equals("init")) {
                 resolveFunction(method, FunctionType.INITIALIZER);
@@ -212,7 +300,6 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
                 resolveFunction(method, FunctionType.METHOD);
             }
         }
-        endScope();
 
         if (stmt.superClass != null) {
             endScope();
@@ -238,15 +325,25 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     private void resolveFunction(Stmt.Function function, FunctionType functionType) {
         FunctionType enclosingFunction = currentFunctionType;
+        final int enclosingFunctionScope = currentFunctionScope;
         currentFunctionType = functionType;
+        currentFunctionScope = scopes.size();
         beginScope();
+        // Methods get their receiver in slot 0 of their own frame, so calling one needs no bound copy of it
+        if (functionType == FunctionType.METHOD || functionType == FunctionType.INITIALIZER) {
+            scopes.peek().declare("this");
+            scopes.peek().define("this");
+        }
         for (final var param : function.params) {
             declare(param);
             define(param);
         }
         resolve(function.body);
-        endScope();
+        final Scope scope = endScope();
+        function.scopeSize = scope.size();
+        function.captured = scope.captured();
         currentFunctionType = enclosingFunction;
+        currentFunctionScope = enclosingFunctionScope;
     }
 
     @Override
@@ -280,25 +377,41 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
                 Reporter.error(stmt.keyword, "Can't return values from class initializer.");
             }
             resolve(stmt.value);
+            markTailCalls(stmt.value);
         }
         return null;
     }
 
+    /// Calls whose value is returned as it is, the engines that support it run them in place of the returning call
+    private static void markTailCalls(Expr expr) {
+        if (expr instanceof Expr.Call call) {
+            call.tail = true;
+        } else if (expr instanceof Expr.Grouping grouping) {
+            markTailCalls(grouping.expression);
+        } else if (expr instanceof Expr.Ternary ternary) {
+            markTailCalls(ternary.left);
+            markTailCalls(ternary.right);
+        } else if (expr instanceof Expr.Logical logical) {
+            markTailCalls(logical.right);
+        }
+    }
+
     private void declare(Token name) {
         if (scopes.isEmpty()) return;
-        Reporter.debug("Declaring new token: " + name.getLexeme());
-        scopes.peek().put(name.getLexeme(), TokenBindingStatus.DECLARED);
+        if (Trace.RESOLVER) Trace.trace(Trace.Category.RESOLVER, "declare `{}`", name.getLexeme());
+        scopes.peek().declare(name.getLexeme());
     }
 
     private void define(Token name) {
         if (scopes.isEmpty()) return;
-        Reporter.debug("Defining new token: " + name.getLexeme());
-        scopes.peek().put(name.getLexeme(), TokenBindingStatus.DEFINED);
+        if (Trace.RESOLVER) Trace.trace(Trace.Category.RESOLVER, "define `{}`", name.getLexeme());
+        scopes.peek().define(name.getLexeme());
     }
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
         declare(stmt.name);
+        if (!scopes.isEmpty()) scopes.peek().declarations.put(scopes.peek().size() - 1, stmt);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
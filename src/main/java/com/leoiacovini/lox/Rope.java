@@ -0,0 +1,90 @@
+package com.leoiacovini.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/// Lazy concatenation of two Lox strings. `+` on long strings builds a Rope node in O(1) instead of copying both
+/// sides, and the characters are only laid out once, the first time the value is printed, compared or hashed. Every
+/// place that handles a Lox string accepts either a `String` or a Rope, see `isString`. Public for the vm engine, whose
+/// strings are the same values.
+public final class Rope implements CharSequence {
+
+    // Below this length copying is cheaper than keeping the tree around
+    static final int MIN_LENGTH = 256;
+
+    private final int length;
+    // String or Rope, both dropped once flattened
+    private CharSequence left;
+    private CharSequence right;
+    private String flat;
+
+    private Rope(CharSequence left, CharSequence right) {
+        this.left = left;
+        this.right = right;
+        this.length = left.length() + right.length();
+    }
+
+    public static boolean isString(Object value) {
+        return value instanceof String || value instanceof Rope;
+    }
+
+    /// Concatenates two values that passed `isString`
+    public static CharSequence concat(Object left, Object right) {
+        final CharSequence a = (CharSequence) left;
+        final CharSequence b = (CharSequence) right;
+        if (a.length() == 0) return b;
+        if (b.length() == 0) return a;
+        if (a.length() + b.length() < MIN_LENGTH) return a.toString() + b;
+        return new Rope(a, b);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /// Flattens iteratively, ropes built in a loop are as deep as the number of iterations
+    @Override
+    public String toString() {
+        if (flat != null) return flat;
+        final var builder = new StringBuilder(length);
+        final Deque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            final CharSequence next = pending.pop();
+            if (next instanceof Rope rope && rope.flat == null) {
+                pending.push(rope.right);
+                pending.push(rope.left);
+            } else {
+                builder.append(next instanceof Rope rope ? rope.flat : next);
+            }
+        }
+        flat = builder.toString();
+        left = null;
+        right = null;
+        return flat;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!isString(other)) return false;
+        final CharSequence that = (CharSequence) other;
+        return length == that.length() && toString().equals(that.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
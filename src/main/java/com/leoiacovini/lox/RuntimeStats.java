@@ -0,0 +1,108 @@
+package com.leoiacovini.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/// Counters behind `--jmx`, read live through RuntimeStatsMXBean from jconsole or any other JMX client.
+///
+/// Like Profiler, every increment is guarded by `active` so a run without `--jmx` only pays for reading it. The
+/// counters are LongAdders: the program's thread increments them while JMX threads read, and an adder never makes
+/// either wait on the other. The vm engine keeps its own objects and frames, it only counts runtime errors and phases.
+final class RuntimeStats implements RuntimeStatsMXBean {
+
+    static final String NAME = "com.leoiacovini.lox:type=RuntimeStats";
+
+    /// Read on every counted event, only ever set before the program starts
+    static boolean active = false;
+
+    static final LongAdder statements = new LongAdder();
+    static final LongAdder calls = new LongAdder();
+    static final LongAdder environments = new LongAdder();
+    static final LongAdder instances = new LongAdder();
+    static final LongAdder classes = new LongAdder();
+    static final LongAdder errors = new LongAdder();
+    private static final Map<String, LongAdder> phases = new ConcurrentHashMap<>();
+
+    private RuntimeStats() {
+    }
+
+    /// Starts counting and registers the MXBean on the platform MBean server, once however many times it's called
+    static synchronized void start() {
+        active = true;
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(NAME);
+            if (!server.isRegistered(name)) server.registerMBean(new RuntimeStats(), name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + NAME, e);
+        }
+    }
+
+    static void phase(String name, long nanos) {
+        phases.computeIfAbsent(name, n -> new LongAdder()).add(nanos);
+    }
+
+    @Override
+    public long getStatementsExecuted() {
+        return statements.sum();
+    }
+
+    @Override
+    public long getFunctionCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getEnvironmentsAllocated() {
+        return environments.sum();
+    }
+
+    @Override
+    public long getInstancesAllocated() {
+        return instances.sum();
+    }
+
+    @Override
+    public long getClassesDefined() {
+        return classes.sum();
+    }
+
+    @Override
+    public long getRuntimeErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseNanos() {
+        final Map<String, Long> nanos = new TreeMap<>();
+        phases.forEach((name, adder) -> nanos.put(name, adder.sum()));
+        return nanos;
+    }
+
+    @Override
+    public void reset() {
+        clear();
+    }
+
+    /// Zeroes every counter, for the MXBean operation and tests
+    static void clear() {
+        statements.reset();
+        calls.reset();
+        environments.reset();
+        instances.reset();
+        classes.reset();
+        errors.reset();
+        phases.clear();
+    }
+
+    /// The MXBean view without registering it, for tests
+    static RuntimeStatsMXBean view() {
+        return new RuntimeStats();
+    }
+}
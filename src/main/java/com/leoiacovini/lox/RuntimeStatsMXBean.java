@@ -0,0 +1,24 @@
+package com.leoiacovini.lox;
+
+import java.util.Map;
+
+/// Live counters of a running interpreter, registered as `com.leoiacovini.lox:type=RuntimeStats` by `--jmx`
+public interface RuntimeStatsMXBean {
+
+    long getStatementsExecuted();
+
+    long getFunctionCalls();
+
+    long getEnvironmentsAllocated();
+
+    long getInstancesAllocated();
+
+    long getClassesDefined();
+
+    long getRuntimeErrors();
+
+    /// Nanoseconds spent in each step of running a program, summed over every program run so far
+    Map<String, Long> getPhaseNanos();
+
+    void reset();
+}
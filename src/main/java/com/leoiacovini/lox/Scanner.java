@@ -1,15 +1,23 @@
 package com.leoiacovini.lox;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.NoSuchElementException;
 
 import com.leoiacovini.lox.Token.TokenType;
 
+/// Turns source code into tokens, reading it through a fixed-size buffer so a script is never held in memory as a
+/// whole. `tokens()` scans lazily, one token per `next()`, for the Parser to pull as it goes; `scanTokens()` collects
+/// them all. A channel can be scanned through `Channels.newReader`.
 public class Scanner {
 
-    private final String sourceCode;
+    private static final int BUFFER_SIZE = 8192;
 
     private static class Keywords {
 
@@ -32,140 +40,147 @@ public class Scanner {
                 Map.entry("while", TokenType.WHILE)
         );
 
-        static Optional<TokenType> get(String lexeme) {
-            return Optional.ofNullable(keywords.get(lexeme));
+        static TokenType get(String lexeme) {
+            return keywords.getOrDefault(lexeme, TokenType.IDENTIFIER);
         }
 
     }
 
+    private final Reader source;
+    // Characters read from the source and not consumed yet are buffer[position, limit)
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private boolean drained = false;
+    // Characters of the token being scanned, so far
+    private final StringBuilder lexeme = new StringBuilder();
+    private int line = 1;
+    private boolean scannedEof = false;
+
     public Scanner(String sourceCode) {
-        this.sourceCode = sourceCode;
+        this(new StringReader(sourceCode));
     }
 
-    private class Tracker {
-        int start = 0;
-        int current = 0;
-        int line = 1;
-
-        private boolean isAtEnd() {
-            return current >= sourceCode.length();
-        }
+    public Scanner(Reader source) {
+        this.source = source;
+    }
 
-        private char advance() {
-            return sourceCode.charAt(this.current++);
+    /// Whether at least `count` characters are left, reading more from the source when the buffer has fewer
+    private boolean available(int count) {
+        if (limit - position >= count) return true;
+        if (drained) return false;
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        try {
+            while (limit < count) {
+                final int read = source.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    drained = true;
+                    return false;
+                }
+                limit += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        return true;
+    }
 
-        private char previous() {
-            return sourceCode.charAt(this.current - 1);
-        }
+    private boolean isAtEnd() {
+        return !available(1);
+    }
 
-        private boolean match(char expected) {
-            if (isAtEnd()) return false;
-            if (sourceCode.charAt(current) != expected) return false;
-            current++;
-            return true;
-        }
+    private char advance() {
+        available(1);
+        final char c = buffer[position++];
+        lexeme.append(c);
+        return c;
+    }
 
-        private char peek() {
-            if (isAtEnd()) return '\0';
-            return sourceCode.charAt(current);
-        }
+    private boolean match(char expected) {
+        if (isAtEnd()) return false;
+        if (buffer[position] != expected) return false;
+        advance();
+        return true;
+    }
 
-        private char peekNext() {
-            if (isAtEnd()) return '\0';
-            if (current + 1 >= sourceCode.length()) return '\0';
-            return sourceCode.charAt(current + 1);
-        }
+    private char peek() {
+        if (isAtEnd()) return '\0';
+        return buffer[position];
+    }
 
-        private void incrementLine() {
-            this.line++;
-        }
+    private char peekNext() {
+        if (!available(2)) return '\0';
+        return buffer[position + 1];
     }
 
-    private Token newToken(Tracker tracker, TokenType tokenType, Object literal) {
-        final var text = sourceCode.substring(tracker.start, tracker.current);
-        return new Token(text, literal, tracker.line, tokenType);
+    private Token newToken(TokenType tokenType, Object literal) {
+        return new Token(lexeme.toString(), literal, line, tokenType);
     }
 
-    private Token newToken(Tracker tracker, TokenType tokenType) {
-        return newToken(tracker, tokenType, null);
+    private Token newToken(TokenType tokenType) {
+        return newToken(tokenType, null);
     }
 
-    private Token string(Tracker tracker) {
-        final var stringBuilder = new StringBuilder();
-        while (tracker.peek() != '"' && !tracker.isAtEnd()) {
-            if (tracker.peek() == '\n') tracker.incrementLine();
-            final var c = tracker.advance();
-            stringBuilder.append(c);
+    private Token string() {
+        while (peek() != '"' && !isAtEnd()) {
+            if (peek() == '\n') line++;
+            advance();
         }
-        if (tracker.isAtEnd()) {
-            Reporter.error(tracker.line, "Unterminated string.");
+        if (isAtEnd()) {
+            Reporter.error(line, "Unterminated string.");
             return null;
         }
-        tracker.advance();
-        final var stringValue = stringBuilder.toString();
-        return newToken(tracker, TokenType.STRING, stringValue);
+        advance();
+        return newToken(TokenType.STRING, lexeme.substring(1, lexeme.length() - 1));
     }
 
-    private Token number(Tracker tracker) {
-        final var stringBuilder = new StringBuilder();
-        // Add the first digit that was identified in the initial iteration
-        stringBuilder.append(tracker.previous());
-        while (Character.isDigit(tracker.peek())) {
-            stringBuilder.append(tracker.advance());
+    private Token number() {
+        while (Character.isDigit(peek())) advance();
+        if (peek() == '.' && Character.isDigit(peekNext())) {
+            advance();
+            while (Character.isDigit(peek())) advance();
         }
-        if (tracker.peek() == '.' && Character.isDigit(tracker.peekNext())) {
-            stringBuilder.append(tracker.advance());
-            while (Character.isDigit(tracker.peek())) {
-                stringBuilder.append(tracker.advance());
-            }
-        }
-        final var stringValue = stringBuilder.toString();
-        return newToken(tracker, TokenType.NUMBER, Double.parseDouble(stringValue));
+        return newToken(TokenType.NUMBER, Double.parseDouble(lexeme.toString()));
     }
 
-    private Token identifier(Tracker tracker) {
-        final var stringBuilder = new StringBuilder();
-        stringBuilder.append(tracker.previous());
-        while (Character.isAlphabetic(tracker.peek()) || Character.isDigit(tracker.peek()) || tracker.peek() == '_') {
-            stringBuilder.append(tracker.advance());
-        }
-        final var stringValue = stringBuilder.toString();
-        final var possibleKeyword = Keywords.get(stringValue);
-        return possibleKeyword
-                .map(tokenType -> newToken(tracker, tokenType, stringValue))
-                .orElseGet(() -> newToken(tracker, TokenType.IDENTIFIER, stringValue));
-    }
-
-    private Optional<Token> scanToken(Tracker tracker) {
-        char c = tracker.advance();
-        return Optional.ofNullable(switch (c) {
-            case '(' -> newToken(tracker, TokenType.LEFT_PARENS);
-            case ')' -> newToken(tracker, TokenType.RIGHT_PARENS);
-            case '{' -> newToken(tracker, TokenType.LEFT_BRACE);
-            case '}' -> newToken(tracker, TokenType.RIGHT_BRACE);
-            case ',' -> newToken(tracker, TokenType.COMMA);
-            case '.' -> newToken(tracker, TokenType.DOT);
-            case '-' -> newToken(tracker, TokenType.MINUS);
-            case '+' -> newToken(tracker, TokenType.PLUS);
-            case ';' -> newToken(tracker, TokenType.SEMICOLON);
-            case '*' -> newToken(tracker, TokenType.STAR);
-            case '?' -> newToken(tracker, TokenType.QUESTION);
-            case ':' -> newToken(tracker, TokenType.COLON);
-
-            case '!' -> newToken(tracker, tracker.match('=') ? TokenType.BANG_EQUAL : TokenType.BANG);
-            case '=' -> newToken(tracker, tracker.match('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUAL);
-            case '<' -> newToken(tracker, tracker.match('=') ? TokenType.LESS_EQUAL : TokenType.LESS);
-            case '>' -> newToken(tracker, tracker.match('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER);
+    private Token identifier() {
+        while (Character.isAlphabetic(peek()) || Character.isDigit(peek()) || peek() == '_') advance();
+        final var text = lexeme.toString();
+        return new Token(text, text, line, Keywords.get(text));
+    }
+
+    /// The next token starting at the current character, or null when it starts whitespace, a comment or an error
+    private Token scanToken() {
+        lexeme.setLength(0);
+        char c = advance();
+        return switch (c) {
+            case '(' -> newToken(TokenType.LEFT_PARENS);
+            case ')' -> newToken(TokenType.RIGHT_PARENS);
+            case '{' -> newToken(TokenType.LEFT_BRACE);
+            case '}' -> newToken(TokenType.RIGHT_BRACE);
+            case ',' -> newToken(TokenType.COMMA);
+            case '.' -> newToken(TokenType.DOT);
+            case '-' -> newToken(TokenType.MINUS);
+            case '+' -> newToken(TokenType.PLUS);
+            case ';' -> newToken(TokenType.SEMICOLON);
+            case '*' -> newToken(TokenType.STAR);
+            case '?' -> newToken(TokenType.QUESTION);
+            case ':' -> newToken(TokenType.COLON);
+
+            case '!' -> newToken(match('=') ? TokenType.BANG_EQUAL : TokenType.BANG);
+            case '=' -> newToken(match('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUAL);
+            case '<' -> newToken(match('=') ? TokenType.LESS_EQUAL : TokenType.LESS);
+            case '>' -> newToken(match('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER);
 
             case '/' -> {
-                if (tracker.match('/')) {
-                    while (tracker.peek() != '\n' && !tracker.isAtEnd()) {
-                        tracker.advance();
-                    }
+                if (match('/')) {
+                    // Skipped without growing the lexeme, a comment can be as long as a line gets
+                    while (peek() != '\n' && !isAtEnd()) position++;
                     yield null;
                 } else {
-                    yield newToken(tracker, TokenType.SLASH);
+                    yield newToken(TokenType.SLASH);
                 }
             }
 
@@ -174,34 +189,58 @@ public class Scanner {
 
             // Line Break
             case '\n' -> {
-                tracker.incrementLine();
+                line++;
                 yield null;
             }
 
-            case '"' -> string(tracker);
+            case '"' -> string();
 
             default -> {
                 if (Character.isDigit(c)) {
-                    yield number(tracker);
+                    yield number();
                 } else if (Character.isAlphabetic(c) || c == '_') {
-                    yield identifier(tracker);
+                    yield identifier();
                 } else {
-                    Reporter.error(tracker.line, "Unexpected character '" + c + "'");
+                    Reporter.error(line, "Unexpected character '" + c + "'");
                     yield null;
                 }
             }
-        });
+        };
+    }
+
+    /// The next token of the source, EOF once it's all read
+    private Token nextToken() {
+        while (!isAtEnd()) {
+            final Token token = scanToken();
+            if (token == null) continue;
+            if (Trace.SCANNER) {
+                Trace.trace(Trace.Category.SCANNER, "{} `{}` at line {}", token.getType(), token.getLexeme(), token.getLine());
+            }
+            return token;
+        }
+        scannedEof = true;
+        return new Token("", null, line, TokenType.EOF);
+    }
+
+    /// Scans as the iterator is advanced, ending with the EOF token. The scanner can only be read once.
+    public Iterator<Token> tokens() {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !scannedEof;
+            }
+
+            @Override
+            public Token next() {
+                if (scannedEof) throw new NoSuchElementException();
+                return nextToken();
+            }
+        };
     }
 
     public List<Token> scanTokens() {
         final var tokenList = new ArrayList<Token>();
-        final var tracker = new Tracker();
-        while (!tracker.isAtEnd()) {
-            tracker.start = tracker.current;
-            final var token = scanToken(tracker);
-            token.ifPresent(tokenList::add);
-        }
-        tokenList.add(new Token("", null, tracker.line, TokenType.EOF));
+        tokens().forEachRemaining(tokenList::add);
         return tokenList;
     }
 
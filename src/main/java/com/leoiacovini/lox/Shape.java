@@ -0,0 +1,38 @@
+package com.leoiacovini.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/// Hidden class of a LoxInstance: maps each field name to its index in the instance's slot array. Shapes form a
+/// tree rooted at EMPTY, adding a field follows (or creates) the transition for that name, so every instance that got
+/// the same fields in the same order shares a single Shape.
+final class Shape {
+
+    static final Shape EMPTY = new Shape(Map.of());
+
+    private final Map<Symbol, Integer> slots;
+    private final Map<Symbol, Shape> transitions = new HashMap<>();
+
+    private Shape(Map<Symbol, Integer> slots) {
+        this.slots = slots;
+    }
+
+    /// Slot of the field, or -1 when instances of this shape don't have it
+    int slotOf(Symbol field) {
+        final Integer slot = slots.get(field);
+        return slot == null ? -1 : slot;
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    /// The shape an instance moves to when `field` is added, its slot being the last one
+    Shape withField(Symbol field) {
+        return transitions.computeIfAbsent(field, name -> {
+            final Map<Symbol, Integer> next = new HashMap<>(slots);
+            next.put(name, slots.size());
+            return new Shape(next);
+        });
+    }
+}
@@ -34,6 +34,8 @@ abstract class Stmt {
         }
 
         final List<Stmt> statements;
+        int scopeSize;
+        boolean[] captured;
     }
 
     static class Class extends Stmt {
@@ -98,6 +100,8 @@ abstract class Stmt {
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
+        int scopeSize;
+        boolean[] captured;
     }
 
     static class Print extends Stmt {
@@ -156,6 +160,7 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+        boolean reassigned;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
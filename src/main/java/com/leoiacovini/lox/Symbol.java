@@ -0,0 +1,61 @@
+package com.leoiacovini.lox;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/// Interned identifier. The Scanner maps every occurrence of a name to the same Symbol, so runtime tables keyed by
+/// Symbol (globals, shapes, method tables) hash by a small integer id and compare by identity instead of rehashing and
+/// comparing strings, and a large source keeps a single copy of each name.
+///
+/// The table only holds its Symbols weakly: one lives as long as a token, AST node or runtime table refers to it, then
+/// it's dropped. A long REPL session or repeated runs over generated sources (`--bench`, the JMH benchmarks) keep the
+/// names of the programs still alive, not every name ever scanned.
+final class Symbol {
+
+    // Keyed by each Symbol's own name, so an entry goes away with its Symbol. Guarded by its own lock.
+    private static final Map<String, WeakReference<Symbol>> TABLE = new WeakHashMap<>();
+    private static int nextId = 0;
+
+    static final Symbol INIT = of("init");
+
+    private final String name;
+    private final int id;
+
+    private Symbol(String name, int id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    static Symbol of(String name) {
+        synchronized (TABLE) {
+            final WeakReference<Symbol> interned = TABLE.get(name);
+            final Symbol existing = interned != null ? interned.get() : null;
+            if (existing != null) return existing;
+            final Symbol symbol = new Symbol(name, nextId++);
+            // A put over a stale entry would keep its old key, whose collection would then drop the new Symbol's entry
+            TABLE.remove(name);
+            TABLE.put(symbol.name, new WeakReference<>(symbol));
+            return symbol;
+        }
+    }
+
+    String name() {
+        return name;
+    }
+
+    int id() {
+        return id;
+    }
+
+    // equals stays identity, interning guarantees one instance per name
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
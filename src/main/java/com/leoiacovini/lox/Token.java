@@ -19,12 +19,17 @@ public class Token {
     }
 
     private final String lexeme;
+    // Only names (identifiers, `this` and `super`) are interned, their lexeme is the Symbol's shared string
+    private final Symbol symbol;
     private final Object literal;
     private final int line;
     private final TokenType type;
 
     public Token(String lexeme, Object literal, int line, TokenType type) {
-        this.lexeme = lexeme;
+        this.symbol = type == TokenType.IDENTIFIER || type == TokenType.THIS || type == TokenType.SUPER
+                ? Symbol.of(lexeme)
+                : null;
+        this.lexeme = symbol != null ? symbol.name() : lexeme;
         this.literal = literal;
         this.line = line;
         this.type = type;
@@ -46,6 +51,10 @@ public class Token {
         return lexeme;
     }
 
+    Symbol getSymbol() {
+        return symbol;
+    }
+
     @Override
     public String toString() {
         return "Token{" +
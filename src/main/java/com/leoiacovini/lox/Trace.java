@@ -0,0 +1,120 @@
+package com.leoiacovini.lox;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/// Debug tracing by category, configured once from the environment when the class is loaded:
+///
+/// - `LOX_TRACE=resolver,runtime:debug` turns categories on, optionally only up to a level (`all` stands for every
+///   category). `DEBUG` set to anything traces every category.
+/// - `LOX_TRACE_BUFFER=n` keeps the last `n` entries in memory instead of printing them, and dumps them to stderr when
+///   a runtime error is reported.
+///
+/// Call sites guard each entry with the category's constant, e.g. `if (Trace.RUNTIME) Trace.trace(...)`, so with a
+/// category off the JIT drops the whole statement and no message or argument is ever built. Messages use `{}`
+/// placeholders and are only formatted once printed, for buffered entries that means when they are dumped.
+final class Trace {
+
+    enum Category {SCANNER, PARSER, RESOLVER, RUNTIME, COMPILER}
+
+    /// TRACE is the most verbose, a category traced at DEBUG leaves its TRACE entries out
+    enum Level {DEBUG, TRACE}
+
+    private record Entry(Category category, Level level, String message, Object[] args) {
+        @Override
+        public String toString() {
+            return "[" + level + " " + category.name().toLowerCase(Locale.ROOT) + "] " + format(message, args);
+        }
+    }
+
+    private static final Map<Category, Level> LEVELS = levels(System.getenv("LOX_TRACE"), System.getenv("DEBUG"));
+    private static final int BUFFER_SIZE = bufferSize(System.getenv("LOX_TRACE_BUFFER"));
+    private static final ArrayDeque<Entry> buffer = new ArrayDeque<>();
+
+    static final boolean SCANNER = LEVELS.containsKey(Category.SCANNER);
+    static final boolean PARSER = LEVELS.containsKey(Category.PARSER);
+    static final boolean RESOLVER = LEVELS.containsKey(Category.RESOLVER);
+    static final boolean RUNTIME = LEVELS.containsKey(Category.RUNTIME);
+    static final boolean COMPILER = LEVELS.containsKey(Category.COMPILER);
+
+    private Trace() {
+    }
+
+    static Map<Category, Level> levels(String config, String debug) {
+        final Map<Category, Level> levels = new EnumMap<>(Category.class);
+        if (debug != null) {
+            for (final Category category : Category.values()) levels.put(category, Level.TRACE);
+        }
+        if (config == null || config.isBlank()) return levels;
+        for (final String item : config.split(",")) {
+            final String[] parts = item.trim().toUpperCase(Locale.ROOT).split(":", 2);
+            try {
+                final Level level = parts.length == 2 ? Level.valueOf(parts[1]) : Level.TRACE;
+                if (parts[0].equals("ALL")) {
+                    for (final Category category : Category.values()) levels.put(category, level);
+                } else {
+                    levels.put(Category.valueOf(parts[0]), level);
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println("Ignoring unknown LOX_TRACE entry `" + item.trim() + "`");
+            }
+        }
+        return levels;
+    }
+
+    private static int bufferSize(String config) {
+        if (config == null) return 0;
+        try {
+            return Math.max(0, Integer.parseInt(config.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring LOX_TRACE_BUFFER `" + config + "`, it isn't a number");
+            return 0;
+        }
+    }
+
+    static void debug(Category category, String message, Object... args) {
+        log(category, Level.DEBUG, message, args);
+    }
+
+    static void trace(Category category, String message, Object... args) {
+        log(category, Level.TRACE, message, args);
+    }
+
+    private static void log(Category category, Level level, String message, Object[] args) {
+        final Level enabled = LEVELS.get(category);
+        if (enabled == null || level.compareTo(enabled) > 0) return;
+        final Entry entry = new Entry(category, level, message, args);
+        if (BUFFER_SIZE == 0) {
+            System.err.println(entry);
+            return;
+        }
+        synchronized (buffer) {
+            if (buffer.size() == BUFFER_SIZE) buffer.removeFirst();
+            buffer.addLast(entry);
+        }
+    }
+
+    /// Prints and clears the buffered entries, oldest first
+    static void dump() {
+        synchronized (buffer) {
+            if (buffer.isEmpty()) return;
+            System.err.println("Last " + buffer.size() + " trace entries:");
+            buffer.forEach(System.err::println);
+            buffer.clear();
+        }
+    }
+
+    static String format(String message, Object[] args) {
+        final StringBuilder builder = new StringBuilder(message.length() + 16 * args.length);
+        int from = 0;
+        int arg = 0;
+        int at;
+        while (arg < args.length && (at = message.indexOf("{}", from)) >= 0) {
+            builder.append(message, from, at).append(args[arg++]);
+            from = at + 2;
+        }
+        return builder.append(message, from, message.length()).toString();
+    }
+}
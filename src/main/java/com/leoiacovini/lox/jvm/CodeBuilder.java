@@ -0,0 +1,216 @@
+package com.leoiacovini.lox.jvm;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/// Emits the Code attribute of a single method, keeping track of the operand stack depth and the number of locals
+/// so `max_stack`/`max_locals` never have to be given by hand. Only reference-typed locals are supported.
+public final class CodeBuilder {
+
+    private final ClassWriter owner;
+    private byte[] code = new byte[256];
+    private int length = 0;
+    private int stack = 0;
+    private int maxStack = 0;
+    private int maxLocals;
+
+    CodeBuilder(ClassWriter owner, String descriptor, boolean isStatic) {
+        this.owner = owner;
+        this.maxLocals = argumentSlots(descriptor) + (isStatic ? 0 : 1);
+    }
+
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            final char c = descriptor.charAt(i);
+            if (c == 'J' || c == 'D') {
+                slots += 2;
+                i++;
+            } else {
+                slots += 1;
+                while (descriptor.charAt(i) == '[') i++;
+                if (descriptor.charAt(i) == 'L') i = descriptor.indexOf(';', i);
+                i++;
+            }
+        }
+        return slots;
+    }
+
+    private static int returnSlots(String descriptor) {
+        final char c = descriptor.charAt(descriptor.indexOf(')') + 1);
+        if (c == 'V') return 0;
+        if (c == 'J' || c == 'D') return 2;
+        return 1;
+    }
+
+    public int position() {
+        return length;
+    }
+
+    private void adjust(int delta) {
+        stack += delta;
+        if (stack < 0) throw new IllegalStateException("Operand stack underflow");
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void u1(int value) {
+        if (length == code.length) code = Arrays.copyOf(code, length * 2);
+        code[length++] = (byte) value;
+    }
+
+    private void u2(int value) {
+        u1(value >> 8);
+        u1(value);
+    }
+
+    public void op(int opcode) {
+        u1(opcode);
+        switch (opcode) {
+            case Opcodes.ACONST_NULL, Opcodes.DUP -> adjust(1);
+            case Opcodes.POP, Opcodes.ARETURN -> adjust(-1);
+            case Opcodes.AALOAD -> adjust(-1);
+            case Opcodes.AASTORE -> adjust(-3);
+            case Opcodes.RETURN -> {
+            }
+            default -> throw new IllegalArgumentException("Opcode " + opcode + " needs operands");
+        }
+    }
+
+    public void iconst(int value) {
+        if (value >= -1 && value <= 5) {
+            u1(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            u1(Opcodes.BIPUSH);
+            u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            u1(Opcodes.SIPUSH);
+            u2(value);
+        } else {
+            ldcIndex(owner.integer(value));
+            return;
+        }
+        adjust(1);
+    }
+
+    public void ldc(String value) {
+        ldcIndex(owner.string(value));
+    }
+
+    private void ldcIndex(int index) {
+        if (index <= 0xff) {
+            u1(Opcodes.LDC);
+            u1(index);
+        } else {
+            u1(Opcodes.LDC_W);
+            u2(index);
+        }
+        adjust(1);
+    }
+
+    private void local(int opcode, int index) {
+        maxLocals = Math.max(maxLocals, index + 1);
+        if (index <= 0xff) {
+            u1(opcode);
+            u1(index);
+        } else {
+            u1(Opcodes.WIDE);
+            u1(opcode);
+            u2(index);
+        }
+    }
+
+    public void aload(int index) {
+        local(Opcodes.ALOAD, index);
+        adjust(1);
+    }
+
+    public void astore(int index) {
+        local(Opcodes.ASTORE, index);
+        adjust(-1);
+    }
+
+    public void type(int opcode, String internalName) {
+        u1(opcode);
+        u2(owner.classRef(internalName));
+        if (opcode == Opcodes.NEW) adjust(1);
+        // ANEWARRAY replaces the length with the array, CHECKCAST leaves the stack as is
+    }
+
+    public void field(int opcode, String fieldOwner, String name, String descriptor) {
+        u1(opcode);
+        u2(owner.fieldRef(fieldOwner, name, descriptor));
+        switch (opcode) {
+            case Opcodes.GETSTATIC -> adjust(1);
+            case Opcodes.PUTSTATIC -> adjust(-1);
+            case Opcodes.PUTFIELD -> adjust(-2);
+            default -> {
+            }
+        }
+    }
+
+    public void invoke(int opcode, String methodOwner, String name, String descriptor) {
+        final int args = argumentSlots(descriptor);
+        u1(opcode);
+        if (opcode == Opcodes.INVOKEINTERFACE) {
+            u2(owner.interfaceMethodRef(methodOwner, name, descriptor));
+            u1(args + 1);
+            u1(0);
+        } else {
+            u2(owner.methodRef(methodOwner, name, descriptor));
+        }
+        adjust(-args - (opcode == Opcodes.INVOKESTATIC ? 0 : 1));
+        adjust(returnSlots(descriptor));
+    }
+
+    public Label newLabel() {
+        return new Label();
+    }
+
+    /// IFEQ/IFNE pop the int they test, GOTO leaves the stack alone; code right after a GOTO is only reachable through
+    /// a label, whose recorded depth is restored by `mark`
+    public void jump(int opcode, Label target) {
+        if (opcode != Opcodes.GOTO) adjust(-1);
+        target.stackDepth = stack;
+        final int at = position();
+        u1(opcode);
+        if (target.position >= 0) {
+            branchOffset(target.position - at);
+        } else {
+            target.pendingJumps.add(at);
+            u2(0);
+        }
+    }
+
+    private void branchOffset(int offset) {
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            throw new IllegalStateException("Method too large for 16-bit branch offsets");
+        }
+        u2(offset);
+    }
+
+    public void mark(Label label) {
+        label.position = position();
+        if (label.stackDepth >= 0) stack = label.stackDepth;
+        for (final int at : label.pendingJumps) {
+            final int offset = label.position - at;
+            if (offset > Short.MAX_VALUE) throw new IllegalStateException("Method too large for 16-bit branch offsets");
+            code[at + 1] = (byte) (offset >> 8);
+            code[at + 2] = (byte) offset;
+        }
+        label.pendingJumps.clear();
+    }
+
+    void writeAttribute(DataOutputStream out, int nameIndex) throws IOException {
+        if (length > 0xffff) throw new IllegalStateException("Method code too large");
+        out.writeShort(nameIndex);
+        out.writeInt(2 + 2 + 4 + length + 2 + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(length);
+        out.write(code, 0, length);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+}
@@ -0,0 +1,11 @@
+package com.leoiacovini.lox.jvm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// A position in the code of a method, possibly referenced by jumps emitted before it is marked.
+public final class Label {
+    int position = -1;
+    int stackDepth = -1;
+    final List<Integer> pendingJumps = new ArrayList<>();
+}
@@ -0,0 +1,44 @@
+package com.leoiacovini.lox.jvm;
+
+/// The subset of JVM opcodes and access flags the Lox backend emits.
+public final class Opcodes {
+
+    private Opcodes() {
+    }
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    public static final int ACONST_NULL = 1;
+    public static final int ICONST_0 = 3;
+    public static final int BIPUSH = 16;
+    public static final int SIPUSH = 17;
+    public static final int LDC = 18;
+    public static final int LDC_W = 19;
+    public static final int ALOAD = 25;
+    public static final int AALOAD = 50;
+    public static final int ASTORE = 58;
+    public static final int AASTORE = 83;
+    public static final int POP = 87;
+    public static final int DUP = 89;
+    public static final int IFEQ = 153;
+    public static final int IFNE = 154;
+    public static final int GOTO = 167;
+    public static final int ARETURN = 176;
+    public static final int RETURN = 177;
+    public static final int GETSTATIC = 178;
+    public static final int PUTSTATIC = 179;
+    public static final int GETFIELD = 180;
+    public static final int PUTFIELD = 181;
+    public static final int INVOKEVIRTUAL = 182;
+    public static final int INVOKESPECIAL = 183;
+    public static final int INVOKESTATIC = 184;
+    public static final int INVOKEINTERFACE = 185;
+    public static final int NEW = 187;
+    public static final int ANEWARRAY = 189;
+    public static final int CHECKCAST = 192;
+    public static final int WIDE = 196;
+}
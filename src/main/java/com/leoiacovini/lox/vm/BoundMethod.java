@@ -0,0 +1,16 @@
+package com.leoiacovini.lox.vm;
+
+final class BoundMethod {
+    final Object receiver;
+    final Closure method;
+
+    BoundMethod(Object receiver, Closure method) {
+        this.receiver = receiver;
+        this.method = method;
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
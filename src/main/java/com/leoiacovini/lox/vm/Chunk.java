@@ -0,0 +1,59 @@
+package com.leoiacovini.lox.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Bytecode of a single function together with its constant pool and the source line of every byte.
+public final class Chunk {
+
+    private byte[] code = new byte[32];
+    private int[] lines = new int[32];
+    private int count = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+    private Object[] constantPool;
+
+    public void write(int value, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = (byte) value;
+        lines[count] = line;
+        count++;
+    }
+
+    public void patch(int offset, int value) {
+        code[offset] = (byte) value;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /// Equal constants share one pool entry, so names used over and over only take a single slot
+    public int addConstant(Object value) {
+        final Integer existing = constantIndexes.get(value);
+        if (existing != null) return existing;
+        constants.add(value);
+        constantIndexes.put(value, constants.size() - 1);
+        constantPool = null;
+        return constants.size() - 1;
+    }
+
+    byte[] code() {
+        return code;
+    }
+
+    Object[] constants() {
+        if (constantPool == null) constantPool = constants.toArray();
+        return constantPool;
+    }
+
+    int line(int offset) {
+        return lines[offset];
+    }
+}
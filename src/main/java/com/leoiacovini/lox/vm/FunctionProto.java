@@ -0,0 +1,21 @@
+package com.leoiacovini.lox.vm;
+
+/// Compiled form of a Lox function: what the VM wraps into a Closure at runtime.
+public final class FunctionProto {
+    final String name;
+    final int arity;
+    final int upvalueCount;
+    final Chunk chunk;
+
+    public FunctionProto(String name, int arity, int upvalueCount, Chunk chunk) {
+        this.name = name;
+        this.arity = arity;
+        this.upvalueCount = upvalueCount;
+        this.chunk = chunk;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
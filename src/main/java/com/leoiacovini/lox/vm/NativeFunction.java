@@ -0,0 +1,24 @@
+package com.leoiacovini.lox.vm;
+
+final class NativeFunction {
+
+    @FunctionalInterface
+    interface Body {
+        Object call(Object[] args);
+    }
+
+    final String name;
+    final int arity;
+    final Body body;
+
+    NativeFunction(String name, int arity, Body body) {
+        this.name = name;
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn: " + name + ">";
+    }
+}
@@ -0,0 +1,60 @@
+package com.leoiacovini.lox.vm;
+
+/// Instruction set of the VM. Each opcode is a single byte, operands follow it inline:
+/// `u8` operands are one byte, `u16` operands two bytes in big-endian order.
+public final class OpCode {
+
+    private OpCode() {
+    }
+
+    /// u16 constant index
+    public static final byte CONSTANT = 0;
+    public static final byte NIL = 1;
+    public static final byte TRUE = 2;
+    public static final byte FALSE = 3;
+    public static final byte POP = 4;
+    /// u8 slot relative to the frame base
+    public static final byte GET_LOCAL = 5;
+    public static final byte SET_LOCAL = 6;
+    /// u16 constant index of the name
+    public static final byte GET_GLOBAL = 7;
+    public static final byte DEFINE_GLOBAL = 8;
+    public static final byte SET_GLOBAL = 9;
+    /// u8 index into the closure upvalues
+    public static final byte GET_UPVALUE = 10;
+    public static final byte SET_UPVALUE = 11;
+    /// u16 constant index of the property name
+    public static final byte GET_PROPERTY = 12;
+    public static final byte SET_PROPERTY = 13;
+    public static final byte GET_SUPER = 14;
+    public static final byte EQUAL = 15;
+    public static final byte NOT_EQUAL = 16;
+    public static final byte GREATER = 17;
+    public static final byte GREATER_EQUAL = 18;
+    public static final byte LESS = 19;
+    public static final byte LESS_EQUAL = 20;
+    public static final byte ADD = 21;
+    public static final byte SUBTRACT = 22;
+    public static final byte MULTIPLY = 23;
+    public static final byte DIVIDE = 24;
+    public static final byte NOT = 25;
+    public static final byte NEGATE = 26;
+    public static final byte PRINT = 27;
+    /// u16 forward offset
+    public static final byte JUMP = 28;
+    /// u16 forward offset, leaves the condition on the stack
+    public static final byte JUMP_IF_FALSE = 29;
+    /// u16 backward offset
+    public static final byte LOOP = 30;
+    /// u8 argument count
+    public static final byte CALL = 31;
+    /// u16 constant index of the function, then one (u8 isLocal, u8 index) pair per upvalue
+    public static final byte CLOSURE = 32;
+    public static final byte CLOSE_UPVALUE = 33;
+    public static final byte RETURN = 34;
+    /// u16 constant index of the class name
+    public static final byte CLASS = 35;
+    public static final byte INHERIT = 36;
+    /// u16 constant index of the method name
+    public static final byte METHOD = 37;
+}
@@ -0,0 +1,15 @@
+package com.leoiacovini.lox.vm;
+
+/// A variable captured by a closure. While the variable is still on the VM stack the upvalue only knows its slot,
+/// once the owning frame goes away the value is moved into the upvalue itself.
+final class Upvalue {
+    final int slot;
+    boolean open = true;
+    Object closed;
+    Upvalue next;
+
+    Upvalue(int slot, Upvalue next) {
+        this.slot = slot;
+        this.next = next;
+    }
+}
@@ -0,0 +1,386 @@
+package com.leoiacovini.lox.vm;
+
+import com.leoiacovini.lox.Rope;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/// Stack based virtual machine running the bytecode produced by the BytecodeCompiler. Every call frame owns a window
+/// of the operand stack starting at its base slot: slot 0 holds the callee (or the receiver for methods), then the
+/// arguments and locals, with the temporaries of the expression being evaluated on top.
+public class VM {
+
+    /// Call frames and the operand stack live on the heap and grow on demand, so the limit is a policy rather than
+    /// a property of the JVM stack. Going deeper is a `Stack overflow.` runtime error.
+    public static final int DEFAULT_MAX_FRAMES = 1 << 20;
+
+    private static final class CallFrame {
+        Closure closure;
+        int ip;
+        int base;
+    }
+
+    private final Map<String, Object> globals = new HashMap<>();
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    private Upvalue openUpvalues = null;
+    private final int maxFrames;
+
+    public VM() {
+        this(DEFAULT_MAX_FRAMES);
+    }
+
+    public VM(int maxFrames) {
+        this.maxFrames = maxFrames;
+        defineNative(new NativeFunction("clock", 0, args -> (double) System.currentTimeMillis() / 1000.0));
+    }
+
+    private void defineNative(NativeFunction function) {
+        globals.put(function.name, function);
+    }
+
+    public void interpret(FunctionProto script) {
+        final Closure closure = new Closure(script);
+        push(closure);
+        callClosure(closure, 0, -1);
+        try {
+            run();
+        } finally {
+            // Leave the machine clean for the next REPL line, also after a runtime error
+            Arrays.fill(stack, 0, sp, null);
+            sp = 0;
+            frameCount = 0;
+            openUpvalues = null;
+        }
+    }
+
+    private void push(Object value) {
+        if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+        stack[sp++] = value;
+    }
+
+    private Object pop() {
+        final Object value = stack[--sp];
+        stack[sp] = null;
+        return value;
+    }
+
+    private Object peek(int distance) {
+        return stack[sp - 1 - distance];
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value instanceof Boolean) return (boolean) value;
+        return value != null;
+    }
+
+    /// Strings are either a `String` or a Rope, and only Rope knows how to compare itself with a plain String
+    private static boolean isEqual(Object left, Object right) {
+        if (right instanceof Rope) return right.equals(left);
+        return Objects.equals(left, right);
+    }
+
+    static String stringify(Object obj) {
+        if (obj == null) return "nil";
+        if (obj instanceof Double) {
+            String text = obj.toString();
+            if (text.endsWith(".0")) {
+                return text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+        return obj.toString();
+    }
+
+    private VmRuntimeError error(String message) {
+        final CallFrame frame = frames[frameCount - 1];
+        return new VmRuntimeError(message, frame.closure.function.chunk.line(frame.ip - 1));
+    }
+
+    private void callClosure(Closure closure, int argCount, int line) {
+        if (closure.function.arity != argCount) {
+            throw new VmRuntimeError("Expected " + closure.function.arity + " arguments but got " + argCount + ".", line);
+        }
+        if (frameCount == maxFrames) throw new VmRuntimeError("Stack overflow.", line);
+        if (frameCount == frames.length) frames = Arrays.copyOf(frames, frameCount * 2);
+        CallFrame frame = frames[frameCount];
+        if (frame == null) {
+            frame = new CallFrame();
+            frames[frameCount] = frame;
+        }
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = sp - argCount - 1;
+        frameCount++;
+    }
+
+    private void callValue(Object callee, int argCount, int line) {
+        if (callee instanceof Closure closure) {
+            callClosure(closure, argCount, line);
+        } else if (callee instanceof BoundMethod bound) {
+            stack[sp - argCount - 1] = bound.receiver;
+            callClosure(bound.method, argCount, line);
+        } else if (callee instanceof VmClass klass) {
+            stack[sp - argCount - 1] = new VmInstance(klass);
+            final Closure initializer = klass.methods.get("init");
+            if (initializer != null) {
+                callClosure(initializer, argCount, line);
+            } else if (argCount != 0) {
+                throw new VmRuntimeError("Expected 0 arguments but got " + argCount + ".", line);
+            }
+        } else if (callee instanceof NativeFunction function) {
+            if (function.arity != argCount) {
+                throw new VmRuntimeError("Expected " + function.arity + " arguments but got " + argCount + ".", line);
+            }
+            final Object[] args = Arrays.copyOfRange(stack, sp - argCount, sp);
+            final Object result = function.body.call(args);
+            Arrays.fill(stack, sp - argCount - 1, sp, null);
+            sp -= argCount + 1;
+            push(result);
+        } else {
+            throw new VmRuntimeError("Can only call functions and classes.", line);
+        }
+    }
+
+    private Upvalue captureUpvalue(int slot) {
+        Upvalue previous = null;
+        Upvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+        final Upvalue created = new Upvalue(slot, upvalue);
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    private void closeUpvalues(int lastSlot) {
+        while (openUpvalues != null && openUpvalues.slot >= lastSlot) {
+            final Upvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.open = false;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private double number(Object operand) {
+        if (!(operand instanceof Double)) throw error("Operand must be a number");
+        return (double) operand;
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code();
+        Object[] constants = frame.closure.function.chunk.constants();
+        int ip = 0;
+        int base = frame.base;
+
+        while (true) {
+            final byte instruction = code[ip++];
+            switch (instruction) {
+                case OpCode.CONSTANT -> {
+                    push(constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)]);
+                    ip += 2;
+                }
+                case OpCode.NIL -> push(null);
+                case OpCode.TRUE -> push(true);
+                case OpCode.FALSE -> push(false);
+                case OpCode.POP -> pop();
+                case OpCode.GET_LOCAL -> push(stack[base + (code[ip++] & 0xff)]);
+                case OpCode.SET_LOCAL -> stack[base + (code[ip++] & 0xff)] = peek(0);
+                case OpCode.GET_GLOBAL -> {
+                    final String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    final Object value = globals.get(name);
+                    if (value == null && !globals.containsKey(name)) {
+                        frame.ip = ip;
+                        throw error("Undefined variable '" + name + "'.");
+                    }
+                    push(value);
+                }
+                case OpCode.DEFINE_GLOBAL -> {
+                    final String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    globals.put(name, pop());
+                }
+                case OpCode.SET_GLOBAL -> {
+                    final String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    if (!globals.containsKey(name)) {
+                        frame.ip = ip;
+                        throw error("Cannot assign undefined variable '" + name + "'");
+                    }
+                    globals.put(name, peek(0));
+                }
+                case OpCode.GET_UPVALUE -> {
+                    final Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    push(upvalue.open ? stack[upvalue.slot] : upvalue.closed);
+                }
+                case OpCode.SET_UPVALUE -> {
+                    final Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    if (upvalue.open) {
+                        stack[upvalue.slot] = peek(0);
+                    } else {
+                        upvalue.closed = peek(0);
+                    }
+                }
+                case OpCode.GET_PROPERTY -> {
+                    final String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    frame.ip = ip;
+                    if (!(peek(0) instanceof VmInstance instance)) throw error("Only instances have properties.");
+                    final Object field = instance.fields.get(name);
+                    if (field != null || instance.fields.containsKey(name)) {
+                        stack[sp - 1] = field;
+                    } else {
+                        final Closure method = instance.klass.methods.get(name);
+                        if (method == null) throw error("Undefined property '" + name + "'.");
+                        stack[sp - 1] = new BoundMethod(instance, method);
+                    }
+                }
+                case OpCode.SET_PROPERTY -> {
+                    final String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    frame.ip = ip;
+                    if (!(peek(1) instanceof VmInstance instance)) throw error("Only instances have fields.");
+                    instance.fields.put(name, pop());
+                    // Like the tree-walker, a property assignment evaluates to nil
+                    stack[sp - 1] = null;
+                }
+                case OpCode.GET_SUPER -> {
+                    final String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    final VmClass superClass = (VmClass) pop();
+                    final Closure method = superClass.methods.get(name);
+                    if (method == null) {
+                        frame.ip = ip;
+                        throw error("Method `" + name + "` not found.");
+                    }
+                    stack[sp - 1] = new BoundMethod(peek(0), method);
+                }
+                case OpCode.EQUAL -> {
+                    final Object right = pop();
+                    stack[sp - 1] = isEqual(stack[sp - 1], right);
+                }
+                case OpCode.NOT_EQUAL -> {
+                    final Object right = pop();
+                    stack[sp - 1] = !isEqual(stack[sp - 1], right);
+                }
+                case OpCode.GREATER, OpCode.GREATER_EQUAL, OpCode.LESS, OpCode.LESS_EQUAL,
+                        OpCode.SUBTRACT, OpCode.MULTIPLY, OpCode.DIVIDE -> {
+                    frame.ip = ip;
+                    final double right = number(pop());
+                    final double left = number(peek(0));
+                    stack[sp - 1] = switch (instruction) {
+                        case OpCode.GREATER -> left > right;
+                        case OpCode.GREATER_EQUAL -> left >= right;
+                        case OpCode.LESS -> left < right;
+                        case OpCode.LESS_EQUAL -> left <= right;
+                        case OpCode.SUBTRACT -> left - right;
+                        case OpCode.MULTIPLY -> left * right;
+                        default -> left / right;
+                    };
+                }
+                case OpCode.ADD -> {
+                    final Object right = pop();
+                    final Object left = peek(0);
+                    if (left instanceof Double a && right instanceof Double b) {
+                        stack[sp - 1] = a + b;
+                    } else if (Rope.isString(left) && Rope.isString(right)) {
+                        stack[sp - 1] = Rope.concat(left, right);
+                    } else {
+                        frame.ip = ip;
+                        throw error("Operands must be two numbers or two strings.");
+                    }
+                }
+                case OpCode.NOT -> stack[sp - 1] = !isTruthy(peek(0));
+                case OpCode.NEGATE -> {
+                    frame.ip = ip;
+                    stack[sp - 1] = -number(peek(0));
+                }
+                case OpCode.PRINT -> System.out.println(stringify(pop()));
+                case OpCode.JUMP -> {
+                    final int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 + offset;
+                }
+                case OpCode.JUMP_IF_FALSE -> {
+                    final int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (!isTruthy(peek(0))) ip += offset;
+                }
+                case OpCode.LOOP -> {
+                    final int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip = ip + 2 - offset;
+                }
+                case OpCode.CALL -> {
+                    final int argCount = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    callValue(peek(argCount), argCount, frame.closure.function.chunk.line(ip - 1));
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code();
+                    constants = frame.closure.function.chunk.constants();
+                    ip = frame.ip;
+                    base = frame.base;
+                }
+                case OpCode.CLOSURE -> {
+                    final FunctionProto function = (FunctionProto) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    final Closure closure = new Closure(function);
+                    for (int i = 0; i < closure.upvalues.length; i++) {
+                        final boolean isLocal = code[ip++] == 1;
+                        final int index = code[ip++] & 0xff;
+                        closure.upvalues[i] = isLocal ? captureUpvalue(base + index) : frame.closure.upvalues[index];
+                    }
+                    push(closure);
+                }
+                case OpCode.CLOSE_UPVALUE -> {
+                    closeUpvalues(sp - 1);
+                    pop();
+                }
+                case OpCode.RETURN -> {
+                    final Object result = pop();
+                    closeUpvalues(base);
+                    frameCount--;
+                    Arrays.fill(stack, base, sp, null);
+                    sp = base;
+                    if (frameCount == 0) return;
+                    push(result);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code();
+                    constants = frame.closure.function.chunk.constants();
+                    ip = frame.ip;
+                    base = frame.base;
+                }
+                case OpCode.CLASS -> {
+                    final String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    push(new VmClass(name));
+                }
+                case OpCode.INHERIT -> {
+                    if (!(peek(1) instanceof VmClass superClass)) {
+                        frame.ip = ip;
+                        throw error("Superclass must be a class.");
+                    }
+                    final VmClass subClass = (VmClass) pop();
+                    subClass.methods.putAll(superClass.methods);
+                }
+                case OpCode.METHOD -> {
+                    final String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    final Closure method = (Closure) pop();
+                    ((VmClass) peek(0)).methods.put(name, method);
+                }
+                default -> throw new IllegalStateException("Unknown opcode " + instruction);
+            }
+        }
+    }
+}
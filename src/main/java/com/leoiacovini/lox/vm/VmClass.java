@@ -0,0 +1,18 @@
+package com.leoiacovini.lox.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class VmClass {
+    final String name;
+    final Map<String, Closure> methods = new HashMap<>();
+
+    VmClass(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return "Class<" + name + ">";
+    }
+}
@@ -0,0 +1,18 @@
+package com.leoiacovini.lox.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class VmInstance {
+    final VmClass klass;
+    final Map<String, Object> fields = new HashMap<>();
+
+    VmInstance(VmClass klass) {
+        this.klass = klass;
+    }
+
+    @Override
+    public String toString() {
+        return "Instance of <" + klass.name + ">";
+    }
+}
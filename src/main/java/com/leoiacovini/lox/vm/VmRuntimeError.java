@@ -0,0 +1,14 @@
+package com.leoiacovini.lox.vm;
+
+public class VmRuntimeError extends RuntimeException {
+    private final int line;
+
+    VmRuntimeError(String message, int line) {
+        super(message);
+        this.line = line;
+    }
+
+    public int getLine() {
+        return line;
+    }
+}
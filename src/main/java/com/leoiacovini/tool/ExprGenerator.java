@@ -14,9 +14,14 @@ public class ExprGenerator {
         return Files.readAllLines(path);
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldsString) {
+    // Fields after a `|` are not constructor arguments, they are left mutable so later passes (e.g. the Resolver) can fill them
+    private static void defineType(PrintWriter writer, String baseName, String className, String description) {
 
+        final var fieldsString = description.split("\\|")[0].trim();
         final var fields = fieldsString.split(", ");
+        final var mutableFields = description.contains("|")
+                ? description.split("\\|")[1].trim().split(", ")
+                : new String[0];
 
         writer.println("  static class " + className + " extends " + baseName + " {");
 
@@ -39,6 +44,10 @@ public class ExprGenerator {
             writer.println("    final " + field + ";");
         }
 
+        for (final var field : mutableFields) {
+            writer.println("    " + field + ";");
+        }
+
         writer.println("  }");
     }
 
@@ -87,15 +96,15 @@ public class ExprGenerator {
 
         defineAst(outDir, "Expr", astDescription);
         defineAst(outDir, "Stmt", List.of(
-                "Block: List<Stmt> statements",
+                "Block: List<Stmt> statements | int scopeSize, boolean[] captured",
                 "Class: Token name, Expr.Variable superClass, List<Stmt.Function> methods",
                 "Expression: Expr expression",
                 "If: Expr condition, Stmt thenBranch, Stmt elseBranch",
-                "Function: Token name, List<Token> params, List<Stmt> body",
+                "Function: Token name, List<Token> params, List<Stmt> body | int scopeSize, boolean[] captured",
                 "Print: Expr expression",
                 "While: Expr condition, Stmt body",
                 "Return: Token keyword, Expr value",
-                "Var: Token name, Expr initializer"
+                "Var: Token name, Expr initializer | boolean reassigned"
         ));
 
     }
@@ -0,0 +1,48 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class BenchTest {
+
+    @Test
+    void percentileTest() {
+        final long[] values = {7, 1, 10, 3, 5, 2, 9, 4, 8, 6};
+        Assertions.assertEquals(5, Bench.percentile(values, 50));
+        Assertions.assertEquals(10, Bench.percentile(values, 95));
+        Assertions.assertEquals(1, Bench.percentile(values, 0));
+        Assertions.assertEquals(42, Bench.percentile(new long[]{42}, 95));
+        final long[] runs = new long[Bench.RUNS];
+        for (int i = 0; i < runs.length; i++) runs[i] = i + 1;
+        Assertions.assertTrue(Bench.percentile(runs, 95) < runs.length, "p95 of a bench is not its slowest run");
+    }
+
+    @Test
+    void measureAndReportTest() {
+        final Bench.Result[] results = new Bench.Result[2];
+        try {
+            LoxRun.capture(() -> {
+                results[0] = Bench.measure("loop", "var i = 0; while (i < 100) i = i + 1; print i;", Interpreter::new);
+                results[1] = Bench.measure("broken", "print 1 + nil;", Interpreter::new);
+            });
+        } finally {
+            Reporter.hadRuntimeError = false;
+        }
+        final Bench.Result ok = results[0];
+        final Bench.Result failed = results[1];
+        Assertions.assertFalse(ok.failed());
+        Assertions.assertTrue(ok.median() > 0 && ok.median() <= ok.p95());
+        Assertions.assertTrue(failed.failed());
+
+        final var output = new ByteArrayOutputStream();
+        Bench.writeJson(new PrintStream(output, true, StandardCharsets.UTF_8), "tree", List.of(ok, failed));
+        final String json = output.toString(StandardCharsets.UTF_8).trim();
+        Assertions.assertTrue(json.startsWith("{\"engine\": \"tree\", \"warmup\": 3, \"runs\": 20, \"results\": [{\"script\": \"loop\", \"medianNanos\": "), json);
+        Assertions.assertTrue(json.endsWith("{\"script\": \"broken\", \"failed\": true}]}"), json);
+    }
+}
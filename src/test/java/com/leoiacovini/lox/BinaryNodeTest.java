@@ -0,0 +1,68 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BinaryNodeTest {
+
+    private static final Token PLUS = new Token("+", null, 1, Token.TokenType.PLUS);
+    private static final Token LESS = new Token("<", null, 1, Token.TokenType.LESS);
+
+    // Operand whose value can be swapped between evaluations to feed the node different types
+    private static class Operand implements ClosureCompiler.ExprNode {
+        Object value;
+
+        @Override
+        public Object evaluate(Environment env) {
+            return value;
+        }
+    }
+
+    @Test
+    void specializesToDoubleAndDeoptimizesTest() {
+        final var left = new Operand();
+        final var right = new Operand();
+        final var node = BinaryNode.create(PLUS, left, right);
+        Assertions.assertEquals(BinaryNode.State.UNINITIALIZED, node.getState());
+
+        left.value = 1.0;
+        right.value = 2.0;
+        Assertions.assertEquals(3.0, node.evaluate(null));
+        Assertions.assertEquals(BinaryNode.State.DOUBLE, node.getState());
+
+        left.value = "a";
+        right.value = "b";
+        Assertions.assertEquals("ab", node.evaluate(null));
+        Assertions.assertEquals(BinaryNode.State.GENERIC, node.getState());
+
+        left.value = 2.0;
+        right.value = 2.0;
+        Assertions.assertEquals(4.0, node.evaluate(null));
+        Assertions.assertEquals(BinaryNode.State.GENERIC, node.getState());
+    }
+
+    @Test
+    void specializesToStringTest() {
+        final var left = new Operand();
+        final var right = new Operand();
+        final var node = BinaryNode.create(PLUS, left, right);
+        left.value = "lo";
+        right.value = "x";
+        Assertions.assertEquals("lox", node.evaluate(null));
+        Assertions.assertEquals(BinaryNode.State.STRING, node.getState());
+    }
+
+    @Test
+    void comparisonStillReportsTypeErrorsTest() {
+        final var left = new Operand();
+        final var right = new Operand();
+        final var node = BinaryNode.create(LESS, left, right);
+        left.value = 1.0;
+        right.value = 2.0;
+        Assertions.assertEquals(true, node.evaluate(null));
+        right.value = "2";
+        Assertions.assertThrows(Interpreter.RuntimeError.class, () -> node.evaluate(null));
+        Assertions.assertEquals(BinaryNode.State.GENERIC, node.getState());
+    }
+
+}
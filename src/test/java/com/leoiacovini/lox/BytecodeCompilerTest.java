@@ -0,0 +1,77 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static com.leoiacovini.lox.LoxRun.run;
+
+public class BytecodeCompilerTest {
+
+    @Test
+    void upvaluesOutliveTheirFrameTest() {
+        final var source = """
+                var get;
+                var set;
+                {
+                  var shared = 1;
+                  fun getter() { return shared; }
+                  fun setter(value) { shared = value; }
+                  get = getter;
+                  set = setter;
+                }
+                set(42);
+                print get();
+                """;
+        Assertions.assertEquals("42\n", run(new BytecodeCompiler(), source));
+    }
+
+    @Test
+    void superInsideNestedFunctionTest() {
+        final var source = """
+                class A { name() { return "A"; } }
+                class B < A {
+                  name() {
+                    fun wrapped() { return "B<" + super.name() + ">"; }
+                    return wrapped();
+                  }
+                }
+                print B().name();
+                """;
+        Assertions.assertEquals("B<A>\n", run(new BytecodeCompiler(), source));
+    }
+
+    @Test
+    void recursionDepthOnlyBoundByMaxDepthTest() {
+        final var source = """
+                fun depth(n) { if (n == 0) return 0; return 1 + depth(n - 1); }
+                print depth(100000);
+                """;
+        Assertions.assertEquals("100000\n", run(new BytecodeCompiler(), source));
+        try {
+            Assertions.assertEquals("", run(new BytecodeCompiler(1000), source));
+            Assertions.assertTrue(Reporter.hadRuntimeError);
+        } finally {
+            Reporter.hadRuntimeError = false;
+        }
+    }
+
+    @Test
+    void longStringsAreRopesTest() {
+        final var source = """
+                class Box {}
+                var box = Box();
+                var s = "";
+                for (var i = 0; i < 100; i = i + 1) s = s + "0123456789";
+                box.s = s;
+                var flat = "";
+                for (var i = 0; i < 10; i = i + 1) flat = flat + "0123456789012345678901234567890123456789012345678901234567890123456789012345678901234567890123456789";
+                print box.s == flat;
+                print flat == box.s;
+                print box.s != flat + "!";
+                print box.s + "" == s;
+                """;
+        Assertions.assertEquals("true\ntrue\ntrue\ntrue\n", run(new BytecodeCompiler(), source));
+        final String line = run(new BytecodeCompiler(), "var s = \"\"; for (var i = 0; i < 30; i = i + 1) s = s + \"0123456789\"; print s;");
+        Assertions.assertEquals("0123456789".repeat(30) + "\n", line);
+    }
+}
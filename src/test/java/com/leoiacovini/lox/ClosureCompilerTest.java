@@ -0,0 +1,21 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static com.leoiacovini.lox.LoxRun.run;
+
+public class ClosureCompilerTest {
+
+    @Test
+    void tailCallsRunInConstantStackTest() {
+        final var source = """
+                fun count(n, acc) {
+                  if (n == 0) return acc;
+                  return count(n - 1, acc + 1);
+                }
+                print count(200000, 0);
+                """;
+        Assertions.assertEquals("200000\n", run(new ClosureCompiler(), source));
+    }
+}
@@ -0,0 +1,62 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/// Every engine prints exactly what the tree-walker prints, over the sample programs and the benchmark scripts
+public class EngineConformanceTest {
+
+    // Benchmarks print the time they took, a clock stopped at 0 makes their output the same on every run. Kept on the
+    // first line so errors would still point at the script's own lines.
+    private static final String STOPPED_CLOCK = "fun clock() { return 0; } ";
+
+    static Stream<Arguments> programs() throws IOException, URISyntaxException {
+        final List<Path> scripts = new ArrayList<>();
+        scripts.addAll(scripts("/lox_samples"));
+        scripts.addAll(scripts("/benchmarks"));
+        return Stream.of("closure", "vm", "jvm")
+                .flatMap(engine -> scripts.stream().map(script -> Arguments.of(engine, script)));
+    }
+
+    private static List<Path> scripts(String directory) throws IOException, URISyntaxException {
+        final var dir = Path.of(Objects.requireNonNull(EngineConformanceTest.class.getResource(directory)).toURI());
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".lox")).sorted().toList();
+        }
+    }
+
+    private static Engine engine(String name) {
+        return switch (name) {
+            case "closure" -> new ClosureCompiler();
+            case "vm" -> new BytecodeCompiler();
+            case "jvm" -> new JvmCompiler();
+            default -> throw new IllegalArgumentException("Unknown engine " + name);
+        };
+    }
+
+    @ParameterizedTest(name = "{0} {1}")
+    @MethodSource("programs")
+    void sameOutputAsInterpreterTest(String engine, Path script) throws IOException {
+        final String source = STOPPED_CLOCK + Files.readString(script, StandardCharsets.UTF_8);
+        try {
+            final String expected = LoxRun.run(new Interpreter(), source);
+            Assertions.assertFalse(Reporter.hadRuntimeError, script + " fails on the tree-walker");
+            Assertions.assertEquals(expected, LoxRun.run(engine(engine), source));
+            Assertions.assertFalse(Reporter.hadRuntimeError, script + " fails on " + engine);
+        } finally {
+            Reporter.hadRuntimeError = false;
+        }
+    }
+}
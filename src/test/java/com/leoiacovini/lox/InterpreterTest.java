@@ -0,0 +1,175 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static com.leoiacovini.lox.LoxRun.run;
+
+public class InterpreterTest {
+
+    @Test
+    void shadowedLocalsTest() {
+        final var source = """
+                var a = "global";
+                {
+                  var a = "outer";
+                  var b = a + "!";
+                  {
+                    var a = "inner";
+                    print a + b;
+                  }
+                  print a;
+                }
+                print a;
+                """;
+        Assertions.assertEquals("innerouter!\nouter\nglobal\n", run(new Interpreter(), source));
+    }
+
+    @Test
+    void closureSlotsTest() {
+        final var source = """
+                fun makeCounter(start) {
+                  var count = start;
+                  fun increment() {
+                    count = count + 1;
+                    return count;
+                  }
+                  return increment;
+                }
+                var counter = makeCounter(10);
+                counter();
+                print counter();
+                """;
+        Assertions.assertEquals("12\n", run(new Interpreter(), source));
+    }
+
+    @Test
+    void superAndThisSlotsTest() {
+        final var source = """
+                class Base {
+                  init(name) { this.name = name; }
+                  greet() { return "hi " + this.name; }
+                }
+                class Child < Base {
+                  greet() { return super.greet() + "!"; }
+                }
+                print Child("lox").greet();
+                """;
+        Assertions.assertEquals("hi lox!\n", run(new Interpreter(), source));
+    }
+
+    @Test
+    void runtimeErrorStopsTheWholeProgramTest() {
+        final var source = """
+                fun fail() {
+                  { print "before"; nil + 1; print "unreachable"; }
+                  print "after block";
+                }
+                fail();
+                print "after call";
+                """;
+        Assertions.assertEquals("before\n", run(new Interpreter(), source));
+    }
+
+    @Test
+    void blockRestoresEnvironmentAfterReturnTest() {
+        final var source = """
+                var a = "global";
+                fun early() {
+                  var a = "local";
+                  { var b = 1; return a; }
+                }
+                {
+                  var a = "block";
+                  early();
+                  print a;
+                }
+                """;
+        Assertions.assertEquals("block\n", run(new Interpreter(), source));
+    }
+
+    @Test
+    void inheritedMethodsAndInitializerTest() {
+        final var source = """
+                class A {
+                  init(n) { this.n = n; }
+                  who() { return "A"; }
+                  describe() { return this.who() + this.n; }
+                }
+                class B < A { who() { return "B" + super.who(); } }
+                class C < B {}
+                print C("3").describe();
+                print C;
+                """;
+        Assertions.assertEquals("BA3\nClass<C>\n", run(new Interpreter(), source));
+    }
+
+    @Test
+    void methodCallsAndEscapingBoundMethodsTest() {
+        final var source = """
+                class Greeter {
+                  init(name) { this.name = name; }
+                  greet() { return "hi " + this.name; }
+                }
+                fun shout() { return "HEY"; }
+                var g = Greeter("bob");
+                var bound = g.greet;
+                g.name = "ann";
+                print g.greet();
+                print bound();
+                g.greet = shout;
+                print g.greet();
+                """;
+        Assertions.assertEquals("hi ann\nhi ann\nHEY\n", run(new Interpreter(), source));
+    }
+
+    @Test
+    void unboxedArithmeticKeepsNumberSemanticsTest() {
+        final var source = """
+                fun two() { print "evaluated"; return 2; }
+                print (1 + 2) * 3 - -4 / 2;
+                print 3 - 1 == 2;
+                print -0 == 0;
+                print 0.1 + 0.2;
+                print 1000000 + 1 > two();
+                print "a" + "b";
+                print nil - two();
+                """;
+        Assertions.assertEquals("11\ntrue\nfalse\n0.30000000000000004\nevaluated\ntrue\nab\nevaluated\n", run(new Interpreter(), source));
+    }
+
+    @Test
+    void tailCallsRunInConstantStackTest() {
+        final var source = """
+                fun even(n) { return n == 0 ? true : odd(n - 1); }
+                fun odd(n) { return n == 0 ? false : even(n - 1); }
+                class Counter {
+                  count(n, acc) {
+                    if (n == 0) return acc;
+                    return this.count(n - 1, acc + 1);
+                  }
+                }
+                print even(200001);
+                print Counter().count(200000, 0);
+                """;
+        Assertions.assertEquals("false\n200000\n", run(new Interpreter(), source));
+    }
+
+    @Test
+    void stackOverflowIsReportedAtTheOverflowingCallTest() {
+        final String errors;
+        try {
+            errors = LoxRun.captureErrors(() -> run(new Interpreter(), """
+                    fun deep(n) {
+                      if (n == 0) return 0;
+                      return 1 +
+                        deep(n - 1);
+                    }
+                    print deep(1000000);
+                    """));
+        } finally {
+            Reporter.hadRuntimeError = false;
+        }
+        Assertions.assertEquals("Stack overflow.\n[line 4]\n", errors);
+    }
+}
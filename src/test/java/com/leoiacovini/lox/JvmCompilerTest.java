@@ -0,0 +1,94 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static com.leoiacovini.lox.LoxRun.parse;
+import static com.leoiacovini.lox.LoxRun.run;
+
+public class JvmCompilerTest {
+
+    @Test
+    void closuresKeepTheirCapturedSlotsTest() {
+        final var statements = parse("""
+                fun counter() {
+                  var count = 0;
+                  var unused = "local";
+                  fun next() { count = count + 1; return count; }
+                  return next;
+                }
+                var c = counter();
+                c();
+                print c();
+                """);
+        final var engine = new JvmCompiler();
+        Assertions.assertEquals("2\n", run(engine, statements));
+        final var counter = (Stmt.Function) statements.get(0);
+        final var next = (Stmt.Function) counter.body.get(2);
+        Assertions.assertNotNull(engine.compiled(counter));
+        Assertions.assertNotNull(engine.compiled(next));
+        Assertions.assertArrayEquals(new boolean[]{true, false, false}, counter.captured);
+    }
+
+    @Test
+    void classesInsideFunctionsAreCompiledTest() {
+        final var statements = parse("""
+                fun make() {
+                  class Base { name() { return "base"; } }
+                  class Point < Base {
+                    init(x) { this.x = x; }
+                    name() { return super.name() + " point"; }
+                  }
+                  return Point(3);
+                }
+                var p = make();
+                print p.x;
+                print p.name();
+                var NotAClass = "nope";
+                class Broken < NotAClass {}
+                """);
+        final var engine = new JvmCompiler();
+        final var make = (Stmt.Function) statements.get(0);
+        final var point = (Stmt.Class) make.body.get(1);
+        try {
+            Assertions.assertEquals("3\nbase point\n", run(engine, statements));
+            Assertions.assertTrue(Reporter.hadRuntimeError);
+        } finally {
+            Reporter.hadRuntimeError = false;
+        }
+        Assertions.assertNotNull(engine.compiled(make));
+        Assertions.assertNotNull(engine.compiled(point.methods.get(1)));
+    }
+
+    @Test
+    void stringsTooLongForTheConstantPoolFallBackToTheInterpreterTest() {
+        final var statements = parse("fun f() { return \"" + "a".repeat(70000) + "\"; }\nprint f() == f();\n");
+        final var engine = new JvmCompiler();
+        Assertions.assertEquals("true\n", run(engine, statements));
+        Assertions.assertNull(engine.compiled((Stmt.Function) statements.get(0)));
+    }
+
+    @Test
+    void tailCallsRunInConstantStackTest() {
+        final var statements = parse("""
+                fun count(n) { if (n == 0) return "done"; return count(n - 1); }
+                class Walker { walk(n) { if (n == 0) return "walked"; return this.walk(n - 1); } }
+                print count(200000);
+                print Walker().walk(200000);
+                """);
+        final var engine = new JvmCompiler();
+        Assertions.assertEquals("done\nwalked\n", run(engine, statements));
+        Assertions.assertNotNull(engine.compiled((Stmt.Function) statements.get(0)));
+    }
+
+    @Test
+    void compiledCodeStaysWithItsEngineTest() {
+        final var statements = parse("fun f() { return \"compiled\"; }\nprint f();\n");
+        run(new JvmCompiler(), statements);
+        // The same tree run again by the tree-walker is interpreted, the compiled code isn't reachable from the AST
+        final var interpreter = new Interpreter();
+        run(interpreter, statements);
+        final var f = (LoxFunction) interpreter.getEnvironment().getVar(((Stmt.Function) statements.get(0)).name);
+        Assertions.assertFalse(f instanceof JvmCompiler.CompiledFunction);
+    }
+}
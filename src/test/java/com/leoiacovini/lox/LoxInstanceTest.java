@@ -0,0 +1,43 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class LoxInstanceTest {
+
+    private static Token name(String lexeme) {
+        return new Token(lexeme, null, 1, Token.TokenType.IDENTIFIER);
+    }
+
+    @Test
+    void sameFieldOrderSharesShapeTest() {
+        final var klass = new LoxClass("Point", null, List.of());
+        final var a = new LoxInstance(klass);
+        final var b = new LoxInstance(klass);
+        for (final var instance : List.of(a, b)) {
+            instance.set(name("x"), 1.0);
+            instance.set(name("y"), 2.0);
+        }
+        Assertions.assertSame(a.getShape(), b.getShape());
+        Assertions.assertEquals(2, a.getShape().size());
+        Assertions.assertEquals(1, a.getShape().slotOf(Symbol.of("y")));
+
+        final var c = new LoxInstance(klass);
+        c.set(name("y"), 3.0);
+        Assertions.assertNotSame(a.getShape(), c.getShape());
+        Assertions.assertEquals(3.0, c.get(name("y")));
+    }
+
+    @Test
+    void overwritingFieldKeepsShapeTest() {
+        final var instance = new LoxInstance(new LoxClass("Box", null, List.of()));
+        for (int i = 0; i < 6; i++) instance.set(name("f" + i), (double) i);
+        final var shape = instance.getShape();
+        instance.set(name("f3"), "three");
+        Assertions.assertSame(shape, instance.getShape());
+        Assertions.assertEquals("three", instance.get(name("f3")));
+        Assertions.assertEquals(5.0, instance.get(name("f5")));
+    }
+}
@@ -0,0 +1,49 @@
+package com.leoiacovini.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+
+/// Runs Lox programs for the tests and captures what they print
+final class LoxRun {
+
+    private LoxRun() {
+    }
+
+    static List<Stmt> parse(String source) {
+        final var statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver().resolve(statements);
+        return statements;
+    }
+
+    static String run(Engine engine, String source) {
+        return run(engine, parse(source));
+    }
+
+    static String run(Engine engine, List<Stmt> statements) {
+        return capture(() -> engine.interpret(statements));
+    }
+
+    /// Everything `action` printed on stdout, lines separated by `\n` whatever the platform
+    static String capture(Runnable action) {
+        return capture(action, System.out, System::setOut);
+    }
+
+    /// Everything `action` reported on stderr, lines separated by `\n` whatever the platform
+    static String captureErrors(Runnable action) {
+        return capture(action, System.err, System::setErr);
+    }
+
+    private static String capture(Runnable action, PrintStream original, Consumer<PrintStream> redirect) {
+        final var output = new ByteArrayOutputStream();
+        redirect.accept(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            action.run();
+        } finally {
+            redirect.accept(original);
+        }
+        return output.toString(StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+}
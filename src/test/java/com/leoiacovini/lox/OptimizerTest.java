@@ -0,0 +1,87 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class OptimizerTest {
+
+    private static String optimize(String source) {
+        final List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver().resolve(statements);
+        return new AstPrinter().print(new Optimizer().optimize(statements));
+    }
+
+    @Test
+    void foldsLiteralsTest() {
+        Assertions.assertEquals("(print 7)\n(print ab)\n(print true)", optimize("""
+                print 1 + 2 * 3;
+                print "a" + "b";
+                print !(1 > 2) and 2 == 2;
+                """));
+    }
+
+    @Test
+    void propagatesLocalConstantsTest() {
+        final var source = """
+                fun f(n) {
+                  var step = 2 * 3;
+                  var total = 0;
+                  total = total + step;
+                  return n * step + total;
+                }
+                """;
+        Assertions.assertEquals(
+                "(fun f (n) (var step 6) (var total 0) (; (= total (+ total 6))) (return (+ (* n 6) total)))",
+                optimize(source));
+    }
+
+    @Test
+    void keepsFailingOperationsTest() {
+        Assertions.assertEquals("(print (+ 1 a))\n(var x 3)\n(print x)", optimize("""
+                print 1 + "a";
+                var x = 3;
+                print x;
+                """));
+    }
+
+    @Test
+    void removesUnreachableStatementsTest() {
+        final var source = """
+                fun f() {
+                  if (false) print "then"; else print "else";
+                  while (nil) print "loop";
+                  return 1;
+                  print "after";
+                }
+                """;
+        Assertions.assertEquals("(fun f () (print else) (return 1))", optimize(source));
+    }
+
+    @Test
+    void hoistsInvariantConditionTest() {
+        final var source = """
+                fun f(limit) {
+                  for (var i = 0; i < limit * 2; i = i + 1) print i;
+                }
+                """;
+        Assertions.assertEquals(
+                "(fun f (limit) (block (var i 0) (block (var invariant#0 (* limit 2)) "
+                        + "(while (< i invariant#0) (block (print i) (; (= i (+ i 1))))))))",
+                optimize(source));
+    }
+
+    @Test
+    void keepsConditionReadingAssignedVariablesTest() {
+        final var source = """
+                fun f(limit) {
+                  for (var i = 0; i < limit * 2; i = i + 1) limit = limit - 1;
+                }
+                """;
+        Assertions.assertEquals(
+                "(fun f (limit) (block (var i 0) (while (< i (* limit 2)) "
+                        + "(block (; (= limit (- limit 1))) (; (= i (+ i 1)))))))",
+                optimize(source));
+    }
+}
@@ -0,0 +1,44 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+public class ProfilerTest {
+
+    @AfterEach
+    void reset() {
+        Profiler.reset();
+    }
+
+    private static String print(boolean table) {
+        final var output = new ByteArrayOutputStream();
+        final var out = new PrintStream(output, true, StandardCharsets.UTF_8);
+        if (table) Profiler.writeTable(out);
+        else Profiler.writeCollapsed(out);
+        return output.toString(StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    void collapsedStacksTest() {
+        Profiler.record("<script>;fib:14;fib:4", 2_000_000);
+        Profiler.record("<script>", 1_000_000);
+        Profiler.record("<script>;fib:14;fib:4", 3_000_000);
+        Assertions.assertEquals("<script> 1000000\n<script>;fib:14;fib:4 5000000\n", print(false));
+    }
+
+    @Test
+    void selfAndTotalTimeTest() {
+        Profiler.record("<script>;outer:9;fib:3;fib:4", 6_000_000);
+        Profiler.record("<script>;outer:9", 2_000_000);
+        Profiler.record("<script>", 2_000_000);
+        final String[] rows = print(true).split("\n");
+        Assertions.assertEquals(4, rows.length);
+        Assertions.assertTrue(rows[1].matches("fib +6\\.0 +60\\.0% +6\\.0 +60\\.0%"), rows[1]);
+        Assertions.assertTrue(rows[3].matches("outer +2\\.0 +20\\.0% +8\\.0 +80\\.0%|<script> +2\\.0 +20\\.0% +10\\.0 +100\\.0%"), rows[3]);
+    }
+}
@@ -0,0 +1,28 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RopeTest {
+
+    @Test
+    void shortConcatenationsStayStringsTest() {
+        Assertions.assertEquals("ab", Rope.concat("a", "b"));
+        Assertions.assertInstanceOf(String.class, Rope.concat("a", "b"));
+    }
+
+    @Test
+    void deepRopeFlattensAndComparesAsStringTest() {
+        final String chunk = "x".repeat(Rope.MIN_LENGTH);
+        Object value = "";
+        for (int i = 0; i < 100_000; i++) {
+            value = Rope.concat(value, chunk);
+        }
+        Assertions.assertInstanceOf(Rope.class, value);
+        final String expected = chunk.repeat(100_000);
+        Assertions.assertTrue(Interpreter.isEqual(expected, value));
+        Assertions.assertTrue(Interpreter.isEqual(value, expected));
+        Assertions.assertEquals(expected.hashCode(), value.hashCode());
+        Assertions.assertEquals(expected, Interpreter.stringify(value));
+    }
+}
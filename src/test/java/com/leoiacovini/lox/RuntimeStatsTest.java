@@ -0,0 +1,80 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static com.leoiacovini.lox.LoxRun.run;
+
+public class RuntimeStatsTest {
+
+    @BeforeEach
+    void start() {
+        RuntimeStats.clear();
+        RuntimeStats.active = true;
+    }
+
+    @AfterEach
+    void stop() {
+        RuntimeStats.active = false;
+        RuntimeStats.clear();
+    }
+
+    private static final String SOURCE = """
+            class Point {
+              init(x) { this.x = x; }
+            }
+            fun make(x) { return Point(x); }
+            for (var i = 0; i < 3; i = i + 1) make(i);
+            """;
+
+    @Test
+    void treeEngineCountsTest() {
+        run(new Interpreter(), SOURCE);
+        final RuntimeStatsMXBean stats = RuntimeStats.view();
+        Assertions.assertEquals(1, stats.getClassesDefined());
+        Assertions.assertEquals(3, stats.getInstancesAllocated());
+        // make and init, three times each
+        Assertions.assertEquals(6, stats.getFunctionCalls());
+        Assertions.assertTrue(stats.getEnvironmentsAllocated() >= 6);
+        Assertions.assertTrue(stats.getStatementsExecuted() > 9);
+        Assertions.assertEquals(0, stats.getRuntimeErrors());
+    }
+
+    @Test
+    void enginesAgreeTest() {
+        run(new Interpreter(), SOURCE);
+        final long statements = RuntimeStats.statements.sum();
+        final long calls = RuntimeStats.calls.sum();
+        RuntimeStats.clear();
+        run(new ClosureCompiler(), SOURCE);
+        Assertions.assertEquals(statements, RuntimeStats.statements.sum());
+        Assertions.assertEquals(calls, RuntimeStats.calls.sum());
+    }
+
+    @Test
+    void startingTwiceRegistersOnceTest() throws JMException {
+        final var server = ManagementFactory.getPlatformMBeanServer();
+        final var name = new ObjectName(RuntimeStats.NAME);
+        try {
+            RuntimeStats.start();
+            RuntimeStats.start();
+            Assertions.assertTrue(server.isRegistered(name));
+        } finally {
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    void phasesAddUpTest() {
+        RuntimeStats.phase("scan", 5);
+        RuntimeStats.phase("parse", 7);
+        RuntimeStats.phase("scan", 10);
+        Assertions.assertEquals("{parse=7, scan=15}", RuntimeStats.view().getPhaseNanos().toString());
+    }
+}
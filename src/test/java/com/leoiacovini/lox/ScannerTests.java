@@ -1,8 +1,14 @@
 package com.leoiacovini.lox;
 
 import com.leoiacovini.lox.Scanner;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+
 public class ScannerTests {
 
     @Test
@@ -13,4 +19,55 @@ public class ScannerTests {
         System.out.println(tokens);
     }
 
+    @Test
+    void identifiersAreInternedTest() {
+        final var tokens = new Scanner("foo bar foo this").scanTokens();
+        Assertions.assertSame(tokens.get(0).getSymbol(), tokens.get(2).getSymbol());
+        Assertions.assertSame(tokens.get(0).getLexeme(), tokens.get(2).getLexeme());
+        Assertions.assertNotSame(tokens.get(0).getSymbol(), tokens.get(1).getSymbol());
+        Assertions.assertSame(Symbol.of("this"), tokens.get(3).getSymbol());
+        Assertions.assertNull(tokens.get(4).getSymbol());
+    }
+
+    private static String describe(List<Token> tokens) {
+        final var description = new StringBuilder();
+        for (final Token token : tokens) {
+            description.append(token.getType()).append(' ').append(token.getLexeme()).append(' ')
+                    .append(token.getLiteral()).append(' ').append(token.getLine()).append('\n');
+        }
+        return description.toString();
+    }
+
+    @Test
+    void readerAcrossBufferBoundariesTest() {
+        final var unit = "var x_1 = 12.5 >= 3; // comment\nprint \"multi\nline\" + x_1;\n";
+        final var source = unit.repeat(2000);
+        // Hands out at most three characters per read, so tokens and two-character lookahead keep straddling reads
+        final Reader trickle = new StringReader(source) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 3));
+            }
+        };
+        final var expected = describe(new Scanner(source).scanTokens());
+        Assertions.assertEquals(expected, describe(new Scanner(trickle).scanTokens()));
+        Assertions.assertTrue(expected.endsWith("EOF  null 6001\n"), expected.substring(expected.length() - 40));
+    }
+
+    @Test
+    void tokensAreScannedOnDemandTest() {
+        final var tokens = new Scanner("print 1;\nprint @;").tokens();
+        Assertions.assertEquals(Token.TokenType.PRINT, tokens.next().getType());
+        Assertions.assertEquals(Token.TokenType.NUMBER, tokens.next().getType());
+        Assertions.assertEquals(Token.TokenType.SEMICOLON, tokens.next().getType());
+        // The bad character on the next line isn't reached yet
+        Assertions.assertFalse(Reporter.hadError);
+        Assertions.assertEquals(Token.TokenType.PRINT, tokens.next().getType());
+        Assertions.assertEquals(Token.TokenType.SEMICOLON, tokens.next().getType());
+        Assertions.assertTrue(Reporter.hadError);
+        Reporter.hadError = false;
+        Assertions.assertEquals(Token.TokenType.EOF, tokens.next().getType());
+        Assertions.assertFalse(tokens.hasNext());
+    }
+
 }
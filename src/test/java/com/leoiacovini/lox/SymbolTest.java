@@ -0,0 +1,26 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+public class SymbolTest {
+
+    @Test
+    void sameNameSameSymbolTest() {
+        final Symbol first = Symbol.of(new String("interned"));
+        Assertions.assertSame(first, Symbol.of(new String("interned")));
+        Assertions.assertSame(Symbol.INIT, new Token("init", "init", 1, Token.TokenType.IDENTIFIER).getSymbol());
+    }
+
+    @Test
+    void unreferencedSymbolsAreDroppedTest() throws InterruptedException {
+        final var dropped = new WeakReference<>(Symbol.of("only_referenced_here_" + System.nanoTime()));
+        for (int i = 0; i < 20 && dropped.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assertions.assertNull(dropped.get());
+    }
+}
@@ -0,0 +1,25 @@
+package com.leoiacovini.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+public class TraceTest {
+
+    @Test
+    void levelsFromEnvironmentTest() {
+        Assertions.assertEquals(Map.of(), Trace.levels(null, null));
+        Assertions.assertEquals(
+                Map.of(Trace.Category.RESOLVER, Trace.Level.TRACE, Trace.Category.RUNTIME, Trace.Level.DEBUG),
+                Trace.levels("resolver, runtime:debug", null));
+        Assertions.assertEquals(Trace.Category.values().length, Trace.levels("all:debug", null).size());
+        Assertions.assertEquals(Trace.Category.values().length, Trace.levels(null, "1").size());
+    }
+
+    @Test
+    void formatPlaceholdersTest() {
+        Assertions.assertEquals("lookup `a` at depth 1, slot 2", Trace.format("lookup `{}` at depth {}, slot {}", new Object[]{"a", 1, 2}));
+        Assertions.assertEquals("missing {}", Trace.format("missing {}", new Object[0]));
+    }
+}